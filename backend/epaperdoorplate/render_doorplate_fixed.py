@@ -7,6 +7,7 @@
 import argparse
 import json
 import os
+import struct
 import sys
 from PIL import Image, ImageDraw, ImageFont
 import requests
@@ -20,11 +21,15 @@ try:
     QRCODE_AVAILABLE = True
 except ImportError:
     QRCODE_AVAILABLE = False
-    print("警告: qrcode 庫未安裝，Guest QR Code 功能將不可用")
+    print("警告: qrcode 庫未安裝，Guest QR Code 功能將不可用", file=sys.stderr)
 
 # 禁用SSL警告（僅用於本地開發環境）
 urllib3.disable_warnings(urllib3.exceptions.InsecureRequestWarning)
 
+# 字體快取（常駐 worker 模式下只探測與載入一次）
+_FONT_PATH_CACHE = {'probed': False, 'path': None}
+_FONT_OBJECT_CACHE = {}
+
 class DoorplateRenderer:
     def __init__(self, width: int = 800, height: int = 480):
         self.width = width
@@ -33,6 +38,11 @@ class DoorplateRenderer:
         self.draw = ImageDraw.Draw(self.canvas)
         self.elements_data = []  # 存儲元素數據
         
+        # 已探測過字體時直接使用快取結果
+        if _FONT_PATH_CACHE['probed']:
+            self.default_font = _FONT_PATH_CACHE['path']
+            return
+        
         # 嘗試載入字體（支持 Windows 和 Linux）
         # 優先使用支持中文的字體
         try:
@@ -97,12 +107,19 @@ class DoorplateRenderer:
         except Exception as e:
             print(f"❌ 字體初始化錯誤: {e}")
             self.default_font = None
+        
+        _FONT_PATH_CACHE['probed'] = True
+        _FONT_PATH_CACHE['path'] = self.default_font
     
     def get_font(self, size: int) -> ImageFont.FreeTypeFont:
         """獲取指定大小的字體"""
         try:
             if self.default_font:
-                return ImageFont.truetype(self.default_font, size)
+                font = _FONT_OBJECT_CACHE.get((self.default_font, size))
+                if font is None:
+                    font = ImageFont.truetype(self.default_font, size)
+                    _FONT_OBJECT_CACHE[(self.default_font, size)] = font
+                return font
             else:
                 # 如果沒有找到字體，嘗試使用系統默認字體
                 # 對於中文，嘗試查找 Noto 或文泉驛字體
@@ -112,18 +129,25 @@ class DoorplateRenderer:
                     "/usr/share/fonts/truetype/wqy/wqy-microhei.ttc",
                     "/usr/share/fonts/truetype/wqy/wqy-zenhei.ttc",
                 ]
+                # 回退結果按字號快取，避免逐字重複探測字體文件
+                font = _FONT_OBJECT_CACHE.get(('fallback', size))
+                if font is not None:
+                    return font
                 for font_path in chinese_fonts:
                     if os.path.exists(font_path):
                         try:
                             font = ImageFont.truetype(font_path, size)
                             print(f"✅ 動態加載中文字體: {font_path}")
+                            _FONT_OBJECT_CACHE[('fallback', size)] = font
                             return font
                         except Exception as e:
                             print(f"⚠️ 動態字體加載失敗 {font_path}: {e}")
                             continue
                 # 最後回退到默認字體（不支持中文）
                 print("❌ 警告: 未找到中文字體，中文可能無法正確顯示（將顯示為方塊）")
-                return ImageFont.load_default()
+                font = ImageFont.load_default()
+                _FONT_OBJECT_CACHE[('fallback', size)] = font
+                return font
         except Exception as e:
             print(f"❌ 字體加載錯誤: {e}")
             return ImageFont.load_default()
@@ -348,6 +372,9 @@ class DoorplateRenderer:
         
         isVertical = textDirection == 'vertical'
         
+        # 字體在循環外取得一次
+        font = self.get_font(fontSize)
+        
         # 判斷是否可以單行/單列排列
         canDistributeInLine = isVertical and len(chars) <= maxRows or not isVertical and len(chars) <= maxCols
         
@@ -361,7 +388,6 @@ class DoorplateRenderer:
                 for i, char in enumerate(chars):
                     char_x = x
                     char_y = y + i * (fontSize + spacing)
-                    font = self.get_font(fontSize)
                     self.draw.text((char_x, char_y), char, font=font, fill=rgb_color)
             else:
                 # 橫向：單行排列
@@ -371,7 +397,6 @@ class DoorplateRenderer:
                 for i, char in enumerate(chars):
                     char_x = x + i * (fontSize + spacing)
                     char_y = y
-                    font = self.get_font(fontSize)
                     self.draw.text((char_x, char_y), char, font=font, fill=rgb_color)
         else:
             # 多行/多列排列
@@ -391,8 +416,6 @@ class DoorplateRenderer:
                 char_x = x + col * (fontSize + horizontalSpacing)
                 char_y = y + row * (fontSize + verticalSpacing)
                 
-                
-                font = self.get_font(fontSize)
                 self.draw.text((char_x, char_y), char, font=font, fill=rgb_color)
     
     def render_image_element(self, element: Dict[str, Any]) -> None:
@@ -616,100 +639,173 @@ class DoorplateRenderer:
         # 生成 bitmap.bin 文件
         self.generate_bitmap_bin(output_path, self.elements_data)
     
+    def to_bmp_bytes(self) -> bytes:
+        """將畫布編碼為 BMP（不寫入文件）"""
+        buffer = io.BytesIO()
+        self.canvas.save(buffer, 'BMP')
+        return buffer.getvalue()
+    
+    def to_bin_bytes(self) -> bytes:
+        """將畫布轉換為 bitmap.bin 格式（不寫入文件）"""
+        return canvas_to_bin_bytes(self.canvas)
+    
     def generate_bitmap_bin(self, bmp_path: str, elements: list) -> None:
         """將 BMP 圖片轉換為 bitmap.bin 格式"""
         try:
-            import numpy as np
-            
             # 讀取 BMP 圖片
             img = Image.open(bmp_path).convert("RGB")
-            pixels = np.array(img)
-            h, w = pixels.shape[:2]
-            
-            print(f"開始轉換 BMP 到 bitmap.bin: {w}x{h}")
-            
-            # 計算灰階值（用於處理抗鋸齒）
-            gray = np.dot(pixels[...,:3], [0.299, 0.587, 0.114])
-            
-            print(f"BMP 像素值範圍: R={pixels[:,:,0].min()}-{pixels[:,:,0].max()}, G={pixels[:,:,1].min()}-{pixels[:,:,1].max()}, B={pixels[:,:,2].min()}-{pixels[:,:,2].max()}")
-            print(f"灰階值範圍: {gray.min():.2f}-{gray.max():.2f}")
-            
-            # 使用閾值來處理抗鋸齒的灰色像素
-            # 閾值：灰階 < 128 視為黑色，>= 128 視為白色
-            # 對於紅色：R 明顯高於 G 和 B，且 G 和 B 都較低
-            gray_threshold = 128
-            
-            # 判斷紅色：R 值高，且 G 和 B 都低（允許一些抗鋸齒誤差）
-            # 紅色判斷條件（更嚴格）：
-            # 1. 接近純紅色：R > 200 且 G < 100 且 B < 100
-            # 2. 紅色與白色混合的邊緣：R 明顯高於 G 和 B，且 G 和 B 都較低（避免誤判橙色/棕色）
-            #    條件：R > G + 30 且 R > B + 30 且 R > 180 且 G < 120 且 B < 120
-            red_mask_condition1 = (pixels[:,:,0] > 200) & (pixels[:,:,1] < 100) & (pixels[:,:,2] < 100)
-            red_mask_condition2 = (pixels[:,:,0] > pixels[:,:,1] + 30) & (pixels[:,:,0] > pixels[:,:,2] + 30) & (pixels[:,:,0] > 180) & (pixels[:,:,1] < 120) & (pixels[:,:,2] < 120)
-            red_mask = red_mask_condition1 | red_mask_condition2
-            
-            # 對於非紅色像素，根據灰階值判斷黑色或白色
-            # 黑色：灰階 < 閾值
-            # 白色：灰階 >= 閾值
-            non_red_mask = ~red_mask
-            black_mask = non_red_mask & (gray < gray_threshold)
-            white_mask = non_red_mask & (gray >= gray_threshold)
-            
-            print(f"分層結果: 黑色={np.sum(black_mask)}, 紅色={np.sum(red_mask)}, 白色={np.sum(white_mask)}")
-            print(f"未分類像素: {h*w - np.sum(black_mask) - np.sum(red_mask) - np.sum(white_mask)}")
-            
-            black_layer = black_mask.astype(np.uint8)
-            red_layer = red_mask.astype(np.uint8)
-            
-            # 轉成每8像素1 byte
-            def layer_to_bytes(layer):
-                bytes_arr = []
-                for y in range(h):
-                    for x in range(0, w, 8):
-                        byte = 0
-                        for bit in range(8):
-                            if x + bit < w and layer[y, x + bit]:
-                                byte |= (1 << (7 - bit))
-                        bytes_arr.append(byte)
-                return bytes_arr
-            
-            bitmap1 = layer_to_bytes(black_layer)
-            bitmap2 = layer_to_bytes(red_layer)
-            
-            print(f"黑色像素 (bitmap1): {len(bitmap1)} bytes")
-            print(f"紅色像素 (bitmap2): {len(bitmap2)} bytes")
-            
-            # 按 800 bytes 塊大小交錯合併
-            block_size = 800
-            combined_bytes = []
-            pos = 0
-            max_len = max(len(bitmap1), len(bitmap2))
-            while pos < max_len:
-                combined_bytes.extend(bitmap1[pos:pos + block_size])
-                combined_bytes.extend(bitmap2[pos:pos + block_size])
-                pos += block_size
+            combined_bytes = canvas_to_bin_bytes(img)
             
             # 生成 bin 文件路徑
             bin_path = bmp_path.rsplit('.', 1)[0] + '.bin'
             
             # 輸出 bin 文件
             with open(bin_path, "wb") as f:
-                f.write(bytearray(combined_bytes))
+                f.write(combined_bytes)
             
             print(f"bitmap.bin 已生成: {bin_path}，長度: {len(combined_bytes)} bytes")
             
         except Exception as e:
             print(f"生成 bitmap.bin 失敗: {e}")
 
+def canvas_to_bin_bytes(img: Image.Image) -> bytes:
+    """將 RGB 圖片轉換為 bitmap.bin 內容（黑/紅兩層，每 800 bytes 交錯）"""
+    pixels = np.array(img.convert("RGB"))
+    h, w = pixels.shape[:2]
+    
+    print(f"開始轉換 BMP 到 bitmap.bin: {w}x{h}")
+    
+    # 計算灰階值（用於處理抗鋸齒）
+    gray = np.dot(pixels[...,:3], [0.299, 0.587, 0.114])
+    
+    # 使用閾值來處理抗鋸齒的灰色像素
+    # 閾值：灰階 < 128 視為黑色，>= 128 視為白色
+    # 對於紅色：R 明顯高於 G 和 B，且 G 和 B 都較低
+    gray_threshold = 128
+    
+    # 判斷紅色：R 值高，且 G 和 B 都低（允許一些抗鋸齒誤差）
+    # 紅色判斷條件（更嚴格）：
+    # 1. 接近純紅色：R > 200 且 G < 100 且 B < 100
+    # 2. 紅色與白色混合的邊緣：R 明顯高於 G 和 B，且 G 和 B 都較低（避免誤判橙色/棕色）
+    #    條件：R > G + 30 且 R > B + 30 且 R > 180 且 G < 120 且 B < 120
+    red_mask_condition1 = (pixels[:,:,0] > 200) & (pixels[:,:,1] < 100) & (pixels[:,:,2] < 100)
+    red_mask_condition2 = (pixels[:,:,0] > pixels[:,:,1] + 30) & (pixels[:,:,0] > pixels[:,:,2] + 30) & (pixels[:,:,0] > 180) & (pixels[:,:,1] < 120) & (pixels[:,:,2] < 120)
+    red_mask = red_mask_condition1 | red_mask_condition2
+    
+    # 對於非紅色像素，根據灰階值判斷黑色或白色
+    # 黑色：灰階 < 閾值
+    # 白色：灰階 >= 閾值
+    non_red_mask = ~red_mask
+    black_mask = non_red_mask & (gray < gray_threshold)
+    white_mask = non_red_mask & (gray >= gray_threshold)
+    
+    print(f"分層結果: 黑色={np.sum(black_mask)}, 紅色={np.sum(red_mask)}, 白色={np.sum(white_mask)}")
+    
+    black_layer = black_mask.astype(np.uint8)
+    red_layer = red_mask.astype(np.uint8)
+    
+    # 轉成每8像素1 byte
+    def layer_to_bytes(layer):
+        bytes_arr = []
+        for y in range(h):
+            for x in range(0, w, 8):
+                byte = 0
+                for bit in range(8):
+                    if x + bit < w and layer[y, x + bit]:
+                        byte |= (1 << (7 - bit))
+                bytes_arr.append(byte)
+        return bytes_arr
+    
+    bitmap1 = layer_to_bytes(black_layer)
+    bitmap2 = layer_to_bytes(red_layer)
+    
+    # 按 800 bytes 塊大小交錯合併
+    block_size = 800
+    combined_bytes = []
+    pos = 0
+    max_len = max(len(bitmap1), len(bitmap2))
+    while pos < max_len:
+        combined_bytes.extend(bitmap1[pos:pos + block_size])
+        combined_bytes.extend(bitmap2[pos:pos + block_size])
+        pos += block_size
+    
+    return bytes(bytearray(combined_bytes))
+
+def read_exact(stream, size: int) -> bytes:
+    """從流中讀取固定長度的數據，流結束時返回 None"""
+    data = b''
+    while len(data) < size:
+        chunk = stream.read(size - len(data))
+        if not chunk:
+            return None
+        data += chunk
+    return data
+
+def write_frame(stream, header: Dict[str, Any], *payloads: bytes) -> None:
+    """寫出一個響應：4 bytes 大端長度 + JSON 頭，接著是各段二進位數據"""
+    header_bytes = json.dumps(header).encode('utf-8')
+    stream.write(struct.pack('>I', len(header_bytes)))
+    stream.write(header_bytes)
+    for payload in payloads:
+        stream.write(payload)
+    stream.flush()
+
+def run_worker() -> None:
+    """
+    常駐 worker 模式（由 Java 端的 worker 池啟動）
+    請求：4 bytes 大端長度 + JSON（{"elements": [...], "width": 800, "height": 480} 或 {"command": "ping"}）
+    響應：4 bytes 大端長度 + JSON 頭（ok / bmpSize / binSize / error），隨後依序是 BMP 與 BIN 數據
+    所有日誌輸出改寫到 stderr，stdout 只用於協議數據
+    """
+    protocol_in = sys.stdin.buffer
+    protocol_out = sys.stdout.buffer
+    sys.stdout = sys.stderr
+    
+    # 預先探測字體，後續任務直接使用快取
+    DoorplateRenderer(1, 1)
+    print("✅ Python 渲染 worker 已就緒")
+    
+    while True:
+        length_bytes = read_exact(protocol_in, 4)
+        if length_bytes is None:
+            break
+        (length,) = struct.unpack('>I', length_bytes)
+        payload = read_exact(protocol_in, length)
+        if payload is None:
+            break
+        
+        try:
+            request = json.loads(payload.decode('utf-8'))
+            if request.get('command') == 'ping':
+                write_frame(protocol_out, {'ok': True, 'pong': True})
+                continue
+            
+            renderer = DoorplateRenderer(int(request.get('width', 800)), int(request.get('height', 480)))
+            renderer.render_elements(request.get('elements', []))
+            bmp_data = renderer.to_bmp_bytes()
+            bin_data = renderer.to_bin_bytes()
+            write_frame(protocol_out, {'ok': True, 'bmpSize': len(bmp_data), 'binSize': len(bin_data)}, bmp_data, bin_data)
+        except Exception as e:
+            print(f"渲染失敗: {e}")
+            write_frame(protocol_out, {'ok': False, 'error': str(e)})
+
 def main():
     parser = argparse.ArgumentParser(description='門牌模板渲染器 - 修復版本')
-    parser.add_argument('--input', required=True, help='輸入JSON文件路徑')
-    parser.add_argument('--output', required=True, help='輸出BMP文件路徑')
+    parser.add_argument('--input', help='輸入JSON文件路徑')
+    parser.add_argument('--output', help='輸出BMP文件路徑')
     parser.add_argument('--width', type=int, default=800, help='畫布寬度')
     parser.add_argument('--height', type=int, default=480, help='畫布高度')
+    parser.add_argument('--worker', action='store_true', help='常駐 worker 模式（從 stdin 接收渲染任務）')
     
     args = parser.parse_args()
     
+    if args.worker:
+        run_worker()
+        return
+    
+    if not args.input or not args.output:
+        parser.error('非 worker 模式需要 --input 與 --output')
+    
     try:
         with open(args.input, 'r', encoding='utf-8') as f:
             data = json.load(f)
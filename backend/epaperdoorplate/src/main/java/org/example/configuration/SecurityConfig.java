@@ -82,12 +82,16 @@ public class SecurityConfig {
                 .requestMatchers("/images/**").permitAll()
                 .requestMatchers("/device/activate").permitAll()
                 .requestMatchers("/device/status").permitAll()
+                .requestMatchers("/device/frame").permitAll()
+                .requestMatchers("/device/frame/delta").permitAll()
                 .requestMatchers("/device/render-complete").permitAll()
                 .requestMatchers("/device/bind").authenticated()
                 .requestMatchers("/device/unbind").authenticated()
                 .requestMatchers("/device/update").authenticated()
                 .requestMatchers("/device/update-template").authenticated()
+                .requestMatchers("/device/display-profile").authenticated()
                 .requestMatchers("/device/list").authenticated()
+                .requestMatchers("/device/transfer/stats").authenticated()
                 // OPTIONS 预检请求允许所有
                 .requestMatchers(request -> "OPTIONS".equalsIgnoreCase(request.getMethod())).permitAll()
                 .requestMatchers("/api/images/**").authenticated()
@@ -1,11 +1,21 @@
 package org.example.controller;
 
+import org.example.model.DeviceFrame;
+import org.example.model.DisplayProfile;
+import org.example.service.DeviceFrameService;
 import org.example.service.DeviceService;
+import org.example.service.render.PackBits;
+import org.example.service.render.RenderRejectedException;
+import org.example.service.transfer.TransferStateTracker;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/device")
@@ -14,6 +24,12 @@ public class DeviceController {
     @Autowired
     private DeviceService deviceService;
 
+    @Autowired
+    private DeviceFrameService frameService;
+
+    @Autowired
+    private TransferStateTracker transferTracker;
+
     @PostMapping("/activate")
     public ResponseEntity<Map<String, Object>> activate(@RequestParam("unique_id") String uniqueId) {
         return ResponseEntity.ok(deviceService.activate(uniqueId));
@@ -34,6 +50,15 @@ public class DeviceController {
         return ResponseEntity.ok(deviceService.update(deviceId, deviceName, refreshInterval, forceNoUpdate));
     }
 
+    /**
+     * 設定設備的顯示面板規格（尺寸、顏色平面、位元順序、交錯塊大小、旋轉），請求體為空時恢復預設
+     */
+    @PostMapping("/display-profile")
+    public ResponseEntity<Map<String, Object>> updateDisplayProfile(@RequestParam("deviceID") String deviceId,
+                                                                    @RequestBody(required = false) DisplayProfile displayProfile) {
+        return ResponseEntity.ok(deviceService.updateDisplayProfile(deviceId, displayProfile));
+    }
+
     @PostMapping("/unbind")
     public ResponseEntity<Map<String, Object>> unbind(@RequestParam("deviceID") String deviceId) {
         return ResponseEntity.ok(deviceService.unbind(deviceId));
@@ -41,8 +66,79 @@ public class DeviceController {
 
     @PostMapping("/status")
     public ResponseEntity<Map<String, Object>> status(@RequestParam("deviceID") String deviceId,
-                                                       @RequestParam(value = "isDeviceRequest", defaultValue = "true") boolean isDeviceRequest) {
-        return ResponseEntity.ok(deviceService.status(deviceId, isDeviceRequest));
+                                                       @RequestParam(value = "isDeviceRequest", defaultValue = "true") boolean isDeviceRequest,
+                                                       @RequestParam(value = "frameHash", required = false) String frameHash,
+                                                       @RequestParam(value = "rawFrame", defaultValue = "false") boolean rawFrame,
+                                                       @RequestParam(value = "delta", defaultValue = "false") boolean delta,
+                                                       @RequestParam(value = "encoding", required = false) String encoding) {
+        return ResponseEntity.ok(deviceService.status(deviceId, isDeviceRequest, frameHash, rawFrame, delta, encoding));
+    }
+
+    /**
+     * 以原始位元組下載設備目前的幀（application/octet-stream，帶 Content-Length）
+     * frameHash 參數只用於區分 URL，實際返回的幀雜湊見 X-Frame-Hash / ETag
+     * encoding=rle 時返回 PackBits 壓縮的數據（X-Frame-Encoding: rle，解壓後長度見 X-Frame-Size）
+     */
+    @GetMapping("/frame")
+    public ResponseEntity<byte[]> frame(@RequestParam("deviceID") String deviceId,
+                                        @RequestParam(value = "encoding", required = false) String encoding,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Optional<DeviceFrame> frameOpt;
+        try {
+            frameOpt = deviceService.getCurrentFrame(deviceId);
+        } catch (RenderRejectedException e) {
+            return serviceUnavailable(e);
+        }
+        if (frameOpt.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        DeviceFrame frame = frameOpt.get();
+        boolean rle = PackBits.ENCODING.equalsIgnoreCase(encoding);
+        String etag = "\"" + frame.getFrameHash() + (rle ? "-" + PackBits.ENCODING : "") + "\"";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.set("X-Frame-Hash", frame.getFrameHash());
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        byte[] payload = frameService.getEncodedBin(frame, encoding);
+        if (rle) {
+            headers.set("X-Frame-Encoding", PackBits.ENCODING);
+            headers.set("X-Frame-Size", String.valueOf(frame.getBinData().length));
+        }
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentLength(payload.length);
+        return ResponseEntity.ok().headers(headers).body(payload);
+    }
+
+    /**
+     * 以原始位元組下載從 baseHash 到目前幀的差分（格式見 FrameDelta）
+     * 基準已不是設備目前畫面時返回 409，設備應改為下載完整幀
+     */
+    @GetMapping("/frame/delta")
+    public ResponseEntity<byte[]> frameDelta(@RequestParam("deviceID") String deviceId,
+                                             @RequestParam("baseHash") String baseHash) {
+        Optional<DeviceFrame> frameOpt;
+        try {
+            frameOpt = deviceService.getCurrentFrame(deviceId);
+        } catch (RenderRejectedException e) {
+            return serviceUnavailable(e);
+        }
+        if (frameOpt.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        DeviceFrame frame = frameOpt.get();
+        if (frame.getDeltaData() == null || !baseHash.equalsIgnoreCase(frame.getDeltaBaseHash())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Frame-Hash", frame.getFrameHash());
+        headers.set("X-Delta-Base-Hash", frame.getDeltaBaseHash());
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentLength(frame.getDeltaData().length);
+        return ResponseEntity.ok().headers(headers).body(frame.getDeltaData());
     }
 
     @GetMapping("/list")
@@ -59,8 +155,20 @@ public class DeviceController {
     @PostMapping("/render-complete")
     public ResponseEntity<Map<String, Object>> renderComplete(@RequestParam("deviceID") String deviceId,
                                                                @RequestParam("status") String status,
-                                                               @RequestParam(value = "errorMessage", required = false) String errorMessage) {
-        return ResponseEntity.ok(deviceService.handleRenderComplete(deviceId, status, errorMessage));
+                                                               @RequestParam(value = "errorMessage", required = false) String errorMessage,
+                                                               @RequestParam(value = "version", required = false) Long version) {
+        return ResponseEntity.ok(deviceService.handleRenderComplete(deviceId, status, errorMessage, version));
+    }
+
+    @GetMapping("/transfer/stats")
+    public ResponseEntity<Map<String, Object>> getTransferStats() {
+        return ResponseEntity.ok(transferTracker.getStats());
+    }
+
+    private static ResponseEntity<byte[]> serviceUnavailable(RenderRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
     }
 }
 
@@ -4,16 +4,23 @@ import org.example.model.Device;
 import org.example.model.User;
 import org.example.repository.DeviceRepository;
 import org.example.repository.UserRepository;
+import org.example.service.DeviceFrameService;
 import org.example.service.DoorplateRendererService;
+import org.example.service.cache.LookupCacheService;
+import org.example.service.render.RenderMode;
+import org.example.service.render.RenderPriority;
+import org.example.service.render.RenderRejectedException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -32,6 +39,12 @@ public class DoorplateRenderController {
     @Autowired
     private DeviceRepository deviceRepository;
     
+    @Autowired
+    private DeviceFrameService deviceFrameService;
+    
+    @Autowired
+    private LookupCacheService lookupCache;
+    
     @PostMapping("/doorplate")
     public ResponseEntity<Resource> renderDoorplate(
             @RequestParam String layoutId,
@@ -81,9 +94,8 @@ public class DoorplateRenderController {
                     guestQRCodeToken = device.getGuestQRCodeToken();
                     if (guestQRCodeToken == null || guestQRCodeToken.isEmpty()) {
                         // 如果設備沒有 token，生成一個
-                        guestQRCodeToken = UUID.randomUUID().toString();
-                        device.setGuestQRCodeToken(guestQRCodeToken);
-                        deviceRepository.save(device);
+                        guestQRCodeToken = deviceRepository.ensureGuestQRCodeToken(device.getDeviceId(), UUID.randomUUID().toString());
+                        lookupCache.invalidateDevice(device.getDeviceId());
                         System.out.println("✅ 為設備生成新的 Guest QR Code Token: " + guestQRCodeToken);
                     } else {
                         System.out.println("✅ 使用設備的 Guest QR Code Token: " + guestQRCodeToken);
@@ -115,7 +127,7 @@ public class DoorplateRenderController {
             }
             
             // 渲染門牌（直接返回數據，不保存文件）
-            DoorplateRendererService.RenderResult result = rendererService.renderDoorplate(elements, layoutId);
+            DoorplateRendererService.RenderResult result = rendererService.renderDoorplate(elements, layoutId, RenderPriority.PREVIEW, RenderMode.WITH_PREVIEW);
             byte[] bmpData = result.getBmpData();
             
             System.out.println("渲染成功，BMP數據大小: " + bmpData.length + " bytes");
@@ -136,6 +148,11 @@ public class DoorplateRenderController {
                     .contentType(MediaType.IMAGE_PNG) // 前端期望PNG格式
                     .body(resource);
                     
+        } catch (RenderRejectedException e) {
+            System.out.println("⚠️ 渲染繁忙，預覽請求被拒絕: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
         } catch (Exception e) {
             System.out.println("=== 渲染失敗 ===");
             System.out.println("錯誤信息: " + e.getMessage());
@@ -145,6 +162,60 @@ public class DoorplateRenderController {
         }
     }
     
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getRenderCacheStats() {
+        return ResponseEntity.ok(rendererService.getRenderCacheStats());
+    }
+    
+    @GetMapping("/scheduler/stats")
+    public ResponseEntity<Map<String, Object>> getRenderSchedulerStats() {
+        return ResponseEntity.ok(rendererService.getRenderSchedulerStats());
+    }
+    
+    @GetMapping("/lookup-cache/stats")
+    public ResponseEntity<Map<String, Object>> getLookupCacheStats() {
+        return ResponseEntity.ok(lookupCache.getStats());
+    }
+    
+    /**
+     * 批次渲染同一模板的多台設備幀（僅限超級用戶）
+     * 請求體：{"templateId": "...", "deviceIds": ["..."]}，deviceIds 省略時渲染所有使用該模板的設備
+     */
+    @PostMapping("/batch")
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<Map<String, Object>> renderBatch(@RequestBody Map<String, Object> request,
+                                                           Authentication authentication) {
+        User user = authentication != null
+                ? userRepository.findByUsername(authentication.getName()).orElse(null)
+                : null;
+        if (user == null || !user.isSuperuser()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "只有超級用戶才能執行批次渲染");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+        }
+        
+        String templateId = (String) request.get("templateId");
+        if (templateId == null || templateId.isEmpty()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "templateId 不能為空");
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        try {
+            Map<String, Object> summary = deviceFrameService.renderTemplateBatch(templateId, (List<String>) request.get("deviceIds"));
+            summary.put("success", true);
+            return ResponseEntity.ok(summary);
+        } catch (Exception e) {
+            System.out.println("❌ 批次渲染失敗: " + e.getMessage());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "批次渲染失敗: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+    
     @GetMapping("/preview/{layoutId}")
     public ResponseEntity<Resource> getPreview(@PathVariable String layoutId) {
         // 預覽功能需要重新渲染，不從文件系統讀取
@@ -41,9 +41,15 @@ public class Device {
 
     private String currentElements; // 目前使用的動態元素配置 (JSON 字符串)
 
-    private boolean needUpdate; // 是否需要更新內容
+    private long contentVersion; // 內容版本（模板、模板內容或面板規格變更時遞增，用於對應預渲染的幀）
 
-    private boolean forceNoUpdate; // 強制不更新（即使 needUpdate 為 true，也不返回更新）
+    private long deliveredVersion; // 最後交付給設備的內容版本
+
+    private long displayedVersion; // 設備確認已顯示的內容版本（render-complete 成功或設備回報的幀雜湊相同）
+
+    private DisplayProfile displayProfile; // 顯示面板規格（null 表示預設的 800x480 黑白紅面板）
+
+    private boolean forceNoUpdate; // 強制不更新（即使有未顯示的內容版本，也不返回更新）
 
     private String deviceName; // 顯示名稱（前端設定）
 
@@ -59,6 +65,13 @@ public class Device {
 
     // Guest QR Code 相關
     private String guestQRCodeToken; // Guest QR Code 的 token（用於生成 QR code URL）
+
+    /**
+     * 設備是否有尚未顯示的內容（取代原本的 needUpdate 欄位）
+     */
+    public boolean needsUpdate() {
+        return !forceNoUpdate && contentVersion > displayedVersion;
+    }
 }
 
 
@@ -0,0 +1,47 @@
+package org.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document("device_frames")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceFrame {
+
+    @Id
+    private String deviceId; // 每台設備只保留最新一幀，直接以 deviceId 作為主鍵
+
+    private String templateId; // 渲染時使用的模板 ID
+
+    private long contentVersion; // 渲染時設備的內容版本（對應 Device.contentVersion）
+
+    private String contentHash; // 渲染內容雜湊（元素 + 尺寸 + 渲染器版本）
+
+    private String rendererVersion; // 渲染時的渲染器版本（引擎、渲染規則或相關配置變更後不再沿用）
+
+    private String frameHash; // bitmap.bin 的雜湊（設備以此判斷畫面是否變更）
+
+    private byte[] binData; // 預先渲染好的 bitmap.bin
+
+    private byte[] rleBinData; // PackBits 壓縮後的 bitmap.bin（設備以 encoding=rle 請求時使用）
+
+    private int deltaBlockSize; // 差分塊大小（依設備的面板規格，0 表示舊記錄，按 800 bytes 處理）
+
+    private LocalDateTime renderedAt;
+
+    // 最後一次交付給設備的幀（差分的基準）
+    private String deliveredFrameHash;
+
+    private byte[] deliveredBinData;
+
+    // 從已交付幀到目前幀的差分（每個內容版本只計算一次）
+    private String deltaBaseHash;
+
+    private byte[] deltaData;
+}
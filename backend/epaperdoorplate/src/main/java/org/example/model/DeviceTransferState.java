@@ -0,0 +1,29 @@
+package org.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document("device_transfer_states")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceTransferState {
+
+    @Id
+    private String deviceId; // 每台設備只保留最新的傳輸狀態
+
+    private String status; // IN_PROGRESS / SUCCESS / FAILED
+
+    private long startedAt; // 開始傳輸的時間（毫秒）
+
+    private long updatedAt; // 最後一次狀態變更的時間（毫秒）
+
+    private Date expiresAt; // 到期時間（TTL 索引到期後由 MongoDB 自動刪除）
+
+    private String errorMessage; // 失敗時設備回報的錯誤信息
+}
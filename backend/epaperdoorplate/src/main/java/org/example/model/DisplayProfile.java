@@ -0,0 +1,97 @@
+package org.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 顯示面板規格（嵌入在 Device 中，未設定時使用預設的 800x480 黑白紅面板）
+ * width / height 為面板掃描方向的像素尺寸；rotation 為佈局順時針旋轉到面板上的角度，
+ * 旋轉 90 / 270 度時佈局按 height x width 設計與渲染
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DisplayProfile {
+
+    public static final String BIT_ORDER_MSB = "MSB";
+    public static final String BIT_ORDER_LSB = "LSB";
+
+    private int width = 800; // 面板寬度（像素）
+
+    private int height = 480; // 面板高度（像素）
+
+    private int colorPlanes = 2; // 1：黑白；2：黑色層 + 紅色層
+
+    private String bitOrder = BIT_ORDER_MSB; // 每個 byte 內的像素順序（MSB：最左像素在最高位）
+
+    private int interleaveBlockSize = 800; // 各平面按多少 bytes 一塊交錯輸出，0 表示不交錯（平面依序輸出）
+
+    private int rotation = 0; // 0 / 90 / 180 / 270
+
+    public static DisplayProfile defaultProfile() {
+        return new DisplayProfile();
+    }
+
+    /**
+     * 設備未設定規格時返回預設規格
+     */
+    public static DisplayProfile resolve(DisplayProfile profile) {
+        return profile != null ? profile : defaultProfile();
+    }
+
+    /**
+     * 佈局（渲染畫布）寬度
+     */
+    public int logicalWidth() {
+        return rotation == 90 || rotation == 270 ? height : width;
+    }
+
+    /**
+     * 佈局（渲染畫布）高度
+     */
+    public int logicalHeight() {
+        return rotation == 90 || rotation == 270 ? width : height;
+    }
+
+    public boolean lsbFirst() {
+        return BIT_ORDER_LSB.equalsIgnoreCase(bitOrder);
+    }
+
+    /**
+     * 幀差分使用的塊大小（不交錯時仍按預設塊大小切分）
+     */
+    public int deltaBlockSize() {
+        return interleaveBlockSize > 0 ? interleaveBlockSize : 800;
+    }
+
+    /**
+     * 影響輸出位元組的全部參數（用於渲染快取 key）
+     */
+    public String cacheKey() {
+        return width + "x" + height + "|p" + colorPlanes + "|" + (lsbFirst() ? BIT_ORDER_LSB : BIT_ORDER_MSB)
+                + "|b" + interleaveBlockSize + "|r" + rotation;
+    }
+
+    /**
+     * 檢查參數是否有效
+     * @throws IllegalArgumentException 參數無效
+     */
+    public void validate() {
+        if (width <= 0 || height <= 0 || width > 4096 || height > 4096) {
+            throw new IllegalArgumentException("面板尺寸無效: " + width + "x" + height);
+        }
+        if (colorPlanes != 1 && colorPlanes != 2) {
+            throw new IllegalArgumentException("顏色平面數只能是 1 或 2: " + colorPlanes);
+        }
+        if (bitOrder != null && !BIT_ORDER_MSB.equalsIgnoreCase(bitOrder) && !BIT_ORDER_LSB.equalsIgnoreCase(bitOrder)) {
+            throw new IllegalArgumentException("位元順序只能是 MSB 或 LSB: " + bitOrder);
+        }
+        if (interleaveBlockSize < 0) {
+            throw new IllegalArgumentException("交錯塊大小不能為負數: " + interleaveBlockSize);
+        }
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("旋轉角度只能是 0 / 90 / 180 / 270: " + rotation);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.repository;
+
+import org.example.model.DeviceFrame;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface DeviceFrameRepository extends MongoRepository<DeviceFrame, String> {
+}
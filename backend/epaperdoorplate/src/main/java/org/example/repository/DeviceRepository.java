@@ -6,11 +6,12 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import java.util.List;
 import java.util.Optional;
 
-public interface DeviceRepository extends MongoRepository<Device, String> {
+public interface DeviceRepository extends MongoRepository<Device, String>, DeviceRepositoryCustom {
     Optional<Device> findByDeviceId(String deviceId);
     Optional<Device> findByUniqueId(String uniqueId);
     List<Device> findByUserIdAndUnboundFalse(String userId);
     Optional<Device> findByGuestQRCodeToken(String token);
+    List<Device> findByCurrentTemplateIdAndUnboundFalse(String currentTemplateId);
 }
 
 
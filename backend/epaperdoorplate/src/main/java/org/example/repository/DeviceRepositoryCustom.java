@@ -0,0 +1,74 @@
+package org.example.repository;
+
+import org.example.model.Device;
+import org.example.model.DisplayProfile;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * 設備狀態的欄位級原子更新（$set / $inc 加條件），不整份讀取再保存，
+ * 避免設備輪詢與前端操作同時發生時互相覆蓋
+ */
+public interface DeviceRepositoryCustom {
+
+    /**
+     * 更換模板：設定 currentTemplateId、遞增 contentVersion
+     * @return 更新後的設備；不存在時返回 empty
+     */
+    Optional<Device> changeTemplate(String deviceId, String templateId);
+
+    /**
+     * 更新設備設定（參數為 null 的欄位不變，不影響內容版本）
+     * @return 更新後的設備；不存在時返回 empty
+     */
+    Optional<Device> updateSettings(String deviceId, String deviceName, Integer refreshInterval, Boolean forceNoUpdate);
+
+    /**
+     * 設定面板規格（null 表示恢復預設），遞增 contentVersion
+     * @return 更新後的設備；不存在時返回 empty
+     */
+    Optional<Device> updateDisplayProfile(String deviceId, DisplayProfile displayProfile);
+
+    /**
+     * 解除綁定，並遞增 contentVersion（設備回到激活畫面，重新綁定後需再次交付內容）
+     * @return 設備是否存在
+     */
+    boolean markUnbound(String deviceId);
+
+    /**
+     * 記錄已交付給設備的內容版本（只會增加，重複交付同一版本不變）
+     */
+    void recordDelivered(String deviceId, long version);
+
+    /**
+     * 記錄設備已顯示的內容版本（設備回報的幀雜湊與目前幀相同時，同時視為已交付；只會增加）
+     */
+    void recordDisplayed(String deviceId, long version);
+
+    /**
+     * 設備確認渲染成功：把 displayedVersion 提高到 version（null 表示最後交付的版本），
+     * 只接受已交付過的版本
+     * @return 確認的版本；設備不存在或版本未交付時返回 empty
+     */
+    OptionalLong acknowledgeDisplayed(String deviceId, Long version);
+
+    /**
+     * 設備還沒有 Guest QR Code token 時設為 candidateToken
+     * @return 設備最終的 token（並發時可能是其他請求先寫入的值）；設備不存在時返回 null
+     */
+    String ensureGuestQRCodeToken(String deviceId, String candidateToken);
+
+    /**
+     * 遞增所有使用該模板、未解綁設備的 contentVersion
+     * @return 更新的設備數
+     */
+    long incrementContentVersionForTemplate(String templateId);
+
+    /**
+     * 遷移舊版的 needUpdate 欄位：needUpdate=true 的設備遞增 contentVersion（保留尚未交付的變更），
+     * 之後移除所有設備的 needUpdate 欄位（重複執行時沒有符合的設備）
+     * @return 保留了待交付變更的設備數
+     */
+    long migrateLegacyNeedUpdate();
+}
@@ -0,0 +1,138 @@
+package org.example.repository;
+
+import org.example.model.Device;
+import org.example.model.DisplayProfile;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * DeviceRepositoryCustom 的 MongoTemplate 實作（Spring Data 按 Impl 後綴自動組合到 DeviceRepository）
+ */
+public class DeviceRepositoryCustomImpl implements DeviceRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public DeviceRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Optional<Device> changeTemplate(String deviceId, String templateId) {
+        return modify(deviceId, new Update().set("currentTemplateId", templateId).inc("contentVersion", 1));
+    }
+
+    @Override
+    public Optional<Device> updateSettings(String deviceId, String deviceName, Integer refreshInterval, Boolean forceNoUpdate) {
+        Update update = new Update();
+        if (deviceName != null && !deviceName.isBlank()) {
+            update.set("deviceName", deviceName);
+        }
+        if (refreshInterval != null) {
+            update.set("refreshInterval", refreshInterval);
+        }
+        if (forceNoUpdate != null) {
+            update.set("forceNoUpdate", forceNoUpdate);
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            return Optional.ofNullable(mongoTemplate.findOne(byDeviceId(deviceId), Device.class));
+        }
+        return modify(deviceId, update);
+    }
+
+    @Override
+    public Optional<Device> updateDisplayProfile(String deviceId, DisplayProfile displayProfile) {
+        Update update = displayProfile != null
+                ? new Update().set("displayProfile", displayProfile)
+                : new Update().unset("displayProfile");
+        return modify(deviceId, update.inc("contentVersion", 1));
+    }
+
+    @Override
+    public boolean markUnbound(String deviceId) {
+        Update update = new Update()
+                .set("isActivated", false)
+                .set("unbound", true)
+                .inc("contentVersion", 1)
+                .unset("currentDoorplateId")
+                .set("updatedAt", LocalDateTime.now());
+        return mongoTemplate.updateFirst(byDeviceId(deviceId), update, Device.class).getMatchedCount() > 0;
+    }
+
+    @Override
+    public void recordDelivered(String deviceId, long version) {
+        mongoTemplate.updateFirst(byDeviceId(deviceId), new Update().max("deliveredVersion", version), Device.class);
+    }
+
+    @Override
+    public void recordDisplayed(String deviceId, long version) {
+        mongoTemplate.updateFirst(byDeviceId(deviceId),
+                new Update().max("deliveredVersion", version).max("displayedVersion", version), Device.class);
+    }
+
+    @Override
+    public OptionalLong acknowledgeDisplayed(String deviceId, Long version) {
+        long target;
+        if (version != null) {
+            target = version;
+        } else {
+            Query current = byDeviceId(deviceId);
+            current.fields().include("deliveredVersion");
+            Device device = mongoTemplate.findOne(current, Device.class);
+            if (device == null) {
+                return OptionalLong.empty();
+            }
+            target = device.getDeliveredVersion();
+        }
+        // 條件包含 deliveredVersion，避免確認尚未交付（或不存在）的版本
+        Query query = Query.query(Criteria.where("deviceId").is(deviceId).and("deliveredVersion").gte(target));
+        boolean matched = mongoTemplate.updateFirst(query, new Update().max("displayedVersion", target), Device.class)
+                .getMatchedCount() > 0;
+        return matched ? OptionalLong.of(target) : OptionalLong.empty();
+    }
+
+    @Override
+    public String ensureGuestQRCodeToken(String deviceId, String candidateToken) {
+        Query missing = Query.query(Criteria.where("deviceId").is(deviceId)
+                .orOperator(Criteria.where("guestQRCodeToken").is(null), Criteria.where("guestQRCodeToken").is("")));
+        if (mongoTemplate.updateFirst(missing, new Update().set("guestQRCodeToken", candidateToken), Device.class)
+                .getModifiedCount() > 0) {
+            return candidateToken;
+        }
+        Query current = byDeviceId(deviceId);
+        current.fields().include("guestQRCodeToken");
+        Device device = mongoTemplate.findOne(current, Device.class);
+        return device != null ? device.getGuestQRCodeToken() : null;
+    }
+
+    @Override
+    public long incrementContentVersionForTemplate(String templateId) {
+        Query query = Query.query(Criteria.where("currentTemplateId").is(templateId).and("unbound").is(false));
+        return mongoTemplate.updateMulti(query, new Update().inc("contentVersion", 1), Device.class).getModifiedCount();
+    }
+
+    @Override
+    public long migrateLegacyNeedUpdate() {
+        // 兩步各自只匹配仍有 needUpdate 欄位的設備：多個節點同時啟動時，每台設備只會遞增一次
+        long pending = mongoTemplate.updateMulti(Query.query(Criteria.where("needUpdate").is(true)),
+                new Update().inc("contentVersion", 1).unset("needUpdate"), Device.class).getModifiedCount();
+        mongoTemplate.updateMulti(Query.query(Criteria.where("needUpdate").exists(true)),
+                new Update().unset("needUpdate"), Device.class);
+        return pending;
+    }
+
+    private Optional<Device> modify(String deviceId, Update update) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(byDeviceId(deviceId), update,
+                FindAndModifyOptions.options().returnNew(true), Device.class));
+    }
+
+    private static Query byDeviceId(String deviceId) {
+        return Query.query(Criteria.where("deviceId").is(deviceId));
+    }
+}
@@ -0,0 +1,504 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.model.Device;
+import org.example.model.DeviceFrame;
+import org.example.model.DisplayProfile;
+import org.example.model.DoorplateLayout;
+import org.example.model.ElementStyle;
+import org.example.repository.DeviceFrameRepository;
+import org.example.repository.DeviceRepository;
+import org.example.service.cache.LookupCacheService;
+import org.example.service.render.FrameDelta;
+import org.example.service.render.FrameEncoder;
+import org.example.service.render.PackBits;
+import org.example.service.render.RenderKeys;
+import org.example.service.render.RenderMode;
+import org.example.service.render.RenderPriority;
+import org.example.service.render.RenderScheduler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 設備幀預渲染服務
+ * 佈局保存或設備模板變更時在背景渲染 bitmap.bin 並按設備保存（附帶內容版本），
+ * /device/status 只需讀取已保存的幀，不在設備請求路徑上渲染
+ */
+@Service
+public class DeviceFrameService {
+
+    // 差分超過完整幀的這個比例時不使用差分（大面積變更時整屏刷新效果較好）
+    private static final double MAX_DELTA_RATIO = 0.5;
+
+    private final DeviceRepository deviceRepository;
+    private final DeviceFrameRepository frameRepository;
+    private final DoorplateLayoutService layoutService;
+    private final DoorplateRendererService rendererService;
+    private final LookupCacheService lookupCache;
+
+    private final ThreadPoolExecutor executor;
+
+    // 批次渲染（同一模板的多台設備）的提交線程：每個線程同時只有一台設備在調度器中排隊，
+    // 線程數即批次佔用調度器 worker 的上限
+    private final ThreadPoolExecutor batchPool;
+
+    // 已排隊但尚未開始的設備（同一設備只排一個任務）
+    private final Set<String> pendingDevices = ConcurrentHashMap.newKeySet();
+
+    // 同一設備的渲染互斥（背景任務與同步補渲染不會同時寫入）
+    // 按 deviceId 雜湊分段的固定鎖，數量不隨設備增加；不同設備偶爾共用同一把鎖，只會排隊不會出錯
+    private static final int RENDER_LOCK_STRIPES = 1024;
+    private final Object[] renderLocks = new Object[RENDER_LOCK_STRIPES];
+
+    public DeviceFrameService(DeviceRepository deviceRepository,
+                              DeviceFrameRepository frameRepository,
+                              DoorplateLayoutService layoutService,
+                              DoorplateRendererService rendererService,
+                              LookupCacheService lookupCache,
+                              RenderScheduler renderScheduler,
+                              @Value("${renderer.prerender.threads:2}") int threads,
+                              @Value("${renderer.prerender.queue-capacity:1000}") int queueCapacity,
+                              @Value("${renderer.batch.parallelism:0}") int batchParallelism) {
+        this.deviceRepository = deviceRepository;
+        this.frameRepository = frameRepository;
+        this.layoutService = layoutService;
+        this.rendererService = rendererService;
+        this.lookupCache = lookupCache;
+        for (int i = 0; i < renderLocks.length; i++) {
+            renderLocks[i] = new Object();
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "frame-prerender-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        // 0 表示與調度器的 worker 數相同（批次最多佔滿空閒的 worker，不會多排隊）
+        int parallelism = batchParallelism > 0 ? batchParallelism : renderScheduler.getWorkerCount();
+        AtomicInteger batchThreadIndex = new AtomicInteger();
+        this.batchPool = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "frame-batch-" + batchThreadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * 排入背景預渲染（同一設備已在排隊時不重複排入）
+     */
+    public void requestRender(String deviceId) {
+        if (!pendingDevices.add(deviceId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                pendingDevices.remove(deviceId);
+                try {
+                    deviceRepository.findByDeviceId(deviceId).ifPresent(device -> {
+                        if (device.isActivated() && !device.isUnbound() && device.getCurrentTemplateId() != null) {
+                            renderAndStore(device);
+                        }
+                    });
+                } catch (Exception e) {
+                    System.err.println("❌ 背景預渲染失敗，deviceId: " + deviceId + "，錯誤: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingDevices.remove(deviceId);
+            System.err.println("⚠️ 預渲染隊列已滿，略過 deviceId: " + deviceId + "（設備請求時會同步渲染）");
+        }
+    }
+
+    /**
+     * 佈局保存後，遞增所有使用該模板的設備的內容版本並排入預渲染
+     */
+    @EventListener
+    public void onLayoutSaved(LayoutSavedEvent event) {
+        String layoutId = event.getLayoutId();
+        if (layoutId == null) {
+            return;
+        }
+        // 以單次 $inc 遞增版本，再讀取更新後的設備（不整份保存，避免覆蓋並發的設備狀態變更）
+        if (deviceRepository.incrementContentVersionForTemplate(layoutId) == 0) {
+            return;
+        }
+        lookupCache.invalidateDevicesOfTemplate(layoutId);
+        List<Device> devices = deviceRepository.findByCurrentTemplateIdAndUnboundFalse(layoutId);
+        if (devices.isEmpty()) {
+            return;
+        }
+        // 同一模板的設備作為一個批次渲染（佈局只載入一次，靜態圖層、圖片、字形共用）
+        try {
+            executor.execute(() -> {
+                try {
+                    renderDevices(layoutId, devices);
+                } catch (Exception e) {
+                    System.err.println("❌ 批次預渲染失敗，layoutId: " + layoutId + "，錯誤: " + e.getMessage());
+                }
+            });
+            System.out.println("🔄 佈局已更新，排入 " + devices.size() + " 台設備的批次預渲染，layoutId: " + layoutId);
+        } catch (RejectedExecutionException e) {
+            System.err.println("⚠️ 預渲染隊列已滿，略過批次預渲染，layoutId: " + layoutId + "（設備請求時會同步渲染）");
+        }
+    }
+
+    /**
+     * 批次渲染同一模板的多台設備並保存幀（模板編輯後整棟樓的設備一次完成）
+     * @param templateId 模板ID
+     * @param deviceIds 設備ID；為空時渲染所有使用該模板的已綁定設備
+     * @return 統計（total、rendered、skipped、failed、elapsedMs、errors）
+     */
+    public Map<String, Object> renderTemplateBatch(String templateId, List<String> deviceIds) {
+        List<Device> devices;
+        if (deviceIds == null || deviceIds.isEmpty()) {
+            devices = deviceRepository.findByCurrentTemplateIdAndUnboundFalse(templateId);
+        } else {
+            devices = new ArrayList<>();
+            for (String deviceId : deviceIds) {
+                deviceRepository.findByDeviceId(deviceId).ifPresent(devices::add);
+            }
+        }
+        return renderDevices(templateId, devices);
+    }
+
+    private Map<String, Object> renderDevices(String templateId, List<Device> devices) {
+        long start = System.currentTimeMillis();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        Map<String, String> errors = new LinkedHashMap<>();
+
+        Optional<DoorplateLayout> layoutOpt = layoutService.findLayoutForRender(templateId);
+        if (layoutOpt.isEmpty()) {
+            throw new RuntimeException("模板不存在: " + templateId);
+        }
+        // 佈局只載入、轉換一次，各設備使用副本（只有 guestQRCode 的 token 不同）
+        List<Map<String, Object>> elements = convertElementStylesToMap(layoutOpt.get().getElements());
+
+        List<Device> targets = new ArrayList<>();
+        for (Device device : devices) {
+            if (!templateId.equals(device.getCurrentTemplateId())) {
+                errors.put(device.getDeviceId(), "設備目前使用的模板不是 " + templateId);
+            } else if (!device.isActivated() || device.isUnbound()) {
+                errors.put(device.getDeviceId(), "設備未激活或已解綁");
+            } else {
+                targets.add(device);
+            }
+        }
+
+        int rendered = 0;
+        int skipped = 0;
+        if (!targets.isEmpty()) {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (Device device : targets) {
+                tasks.add(() -> renderBatchDevice(device, elements, templateId));
+            }
+            // 第一台設備先在呼叫線程渲染，填好靜態圖層、圖片與字形快取，其餘設備再分派到批次線程
+            // 渲染以最低優先級經由調度器執行，設備請求、激活碼畫面與預覽不會排在批次之後
+            List<Future<Boolean>> futures = new ArrayList<>();
+            try {
+                futures.add(CompletableFuture.completedFuture(tasks.get(0).call()));
+            } catch (Exception e) {
+                futures.add(CompletableFuture.failedFuture(e));
+            }
+            List<Callable<Boolean>> rest = tasks.subList(1, tasks.size());
+            if (!rest.isEmpty()) {
+                for (Callable<Boolean> task : rest) {
+                    futures.add(batchPool.submit(task));
+                }
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    if (futures.get(i).get()) {
+                        rendered++;
+                    } else {
+                        skipped++;
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    errors.put(targets.get(i).getDeviceId(), cause.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    errors.put(targets.get(i).getDeviceId(), "批次渲染被中斷");
+                }
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        summary.put("templateId", templateId);
+        summary.put("total", devices.size());
+        summary.put("rendered", rendered);
+        summary.put("skipped", skipped);
+        summary.put("failed", errors.size());
+        summary.put("elapsedMs", elapsed);
+        summary.put("errors", errors);
+        System.out.println("✅ 批次渲染完成，templateId: " + templateId + "，設備: " + devices.size()
+                + "，渲染: " + rendered + "，略過: " + skipped + "，失敗: " + errors.size() + "，耗時: " + elapsed + " ms");
+        return summary;
+    }
+
+    /**
+     * 批次中的單台設備：已有目前版本的幀時略過
+     * @return 是否重新渲染
+     */
+    private boolean renderBatchDevice(Device device, List<Map<String, Object>> sharedElements, String templateId) {
+        String deviceId = device.getDeviceId();
+        synchronized (renderLock(deviceId)) {
+            Optional<DeviceFrame> existing = frameRepository.findById(deviceId);
+            if (existing.isPresent() && isCurrent(existing.get(), device)) {
+                return false;
+            }
+            List<Map<String, Object>> elements = new ArrayList<>(sharedElements.size());
+            for (Map<String, Object> element : sharedElements) {
+                elements.add(new HashMap<>(element));
+            }
+            injectGuestQRCodeToken(device, elements);
+
+            long start = System.currentTimeMillis();
+            DoorplateRendererService.RenderResult result = rendererService.renderForBatch(elements, templateId,
+                    DisplayProfile.resolve(device.getDisplayProfile()));
+            storeFrame(device, existing, elements, result, start);
+            return true;
+        }
+    }
+
+    /**
+     * 讀取與設備目前內容版本一致的已保存幀
+     */
+    public Optional<DeviceFrame> findCurrentFrame(Device device) {
+        return frameRepository.findById(device.getDeviceId())
+                .filter(frame -> isCurrent(frame, device));
+    }
+
+    /**
+     * 讀取已保存的幀；沒有或已過期時同步渲染（例如升級後首次請求、預渲染隊列已滿）
+     * @return 幀；模板不存在時返回 empty
+     */
+    public Optional<DeviceFrame> getOrRenderFrame(Device device) {
+        Optional<DeviceFrame> frame = findCurrentFrame(device);
+        if (frame.isPresent()) {
+            return frame;
+        }
+        System.out.println("⚠️ 沒有可用的預渲染幀，同步渲染，deviceId: " + device.getDeviceId());
+        return renderAndStore(device);
+    }
+
+    /**
+     * 渲染設備目前的模板並保存為該設備的幀
+     * @return 幀；模板不存在時返回 empty
+     */
+    public Optional<DeviceFrame> renderAndStore(Device device) {
+        String deviceId = device.getDeviceId();
+        synchronized (renderLock(deviceId)) {
+            // 等待鎖期間可能已由其他線程渲染完成
+            Optional<DeviceFrame> existing = frameRepository.findById(deviceId);
+            if (existing.isPresent() && isCurrent(existing.get(), device)) {
+                return existing;
+            }
+
+            Optional<DoorplateLayout> layoutOpt = layoutService.findLayoutForRender(device.getCurrentTemplateId());
+            if (layoutOpt.isEmpty()) {
+                System.out.println("⚠️ 模板不存在，無法渲染，templateId: " + device.getCurrentTemplateId());
+                return Optional.empty();
+            }
+
+            List<Map<String, Object>> elements = convertElementStylesToMap(layoutOpt.get().getElements());
+            injectGuestQRCodeToken(device, elements);
+
+            long start = System.currentTimeMillis();
+            DoorplateRendererService.RenderResult result = rendererService.renderDoorplate(elements, device.getCurrentTemplateId(),
+                    DisplayProfile.resolve(device.getDisplayProfile()), RenderPriority.DEVICE, RenderMode.BIN_ONLY);
+            return Optional.of(storeFrame(device, existing, elements, result, start));
+        }
+    }
+
+    /**
+     * 保存渲染結果為設備幀（呼叫方需持有該設備的渲染鎖）
+     */
+    private DeviceFrame storeFrame(Device device, Optional<DeviceFrame> existing, List<Map<String, Object>> elements,
+                                   DoorplateRendererService.RenderResult result, long start) {
+        String deviceId = device.getDeviceId();
+        byte[] binData = result.getBinData();
+        if (binData == null || binData.length == 0) {
+            throw new RuntimeException("bin 數據為空或未生成");
+        }
+
+        // 沿用既有記錄以保留已交付幀（差分基準）
+        DeviceFrame frame = existing.orElseGet(DeviceFrame::new);
+        frame.setDeviceId(deviceId);
+        frame.setTemplateId(device.getCurrentTemplateId());
+        frame.setContentVersion(device.getContentVersion());
+        frame.setContentHash(rendererService.contentHash(elements, result.getProfile()));
+        frame.setRendererVersion(rendererService.rendererVersion());
+        frame.setFrameHash(RenderKeys.frameHash(binData));
+        frame.setBinData(binData);
+        frame.setRleBinData(PackBits.encode(binData));
+        frame.setDeltaBlockSize(result.getProfile().deltaBlockSize());
+        frame.setRenderedAt(LocalDateTime.now());
+        updateDelta(frame);
+        frameRepository.save(frame);
+        System.out.println("✅ 已保存設備幀，deviceId: " + deviceId + "，contentVersion: " + frame.getContentVersion()
+                + "，大小: " + binData.length + " bytes"
+                + (frame.getDeltaData() != null ? "，差分: " + frame.getDeltaData().length + " bytes" : "")
+                + "，耗時: " + (System.currentTimeMillis() - start) + " ms");
+        return frame;
+    }
+
+    /**
+     * 按設備要求的編碼返回幀數據
+     * @param encoding null / raw：原始 bitmap.bin；rle：PackBits 壓縮
+     */
+    public byte[] getEncodedBin(DeviceFrame frame, String encoding) {
+        if (!PackBits.ENCODING.equalsIgnoreCase(encoding)) {
+            return frame.getBinData();
+        }
+        if (frame.getRleBinData() == null) {
+            // 壓縮功能上線前保存的幀：補算一次並寫回
+            frame.setRleBinData(PackBits.encode(frame.getBinData()));
+            synchronized (renderLock(frame.getDeviceId())) {
+                frameRepository.findById(frame.getDeviceId())
+                        .filter(stored -> frame.getFrameHash().equals(stored.getFrameHash()))
+                        .ifPresent(stored -> {
+                            stored.setRleBinData(frame.getRleBinData());
+                            frameRepository.save(stored);
+                        });
+            }
+        }
+        return frame.getRleBinData();
+    }
+
+    /**
+     * 記錄幀已交付給設備（作為下一幀的差分基準）
+     */
+    public void markDelivered(String deviceId, String frameHash, byte[] binData) {
+        synchronized (renderLock(deviceId)) {
+            frameRepository.findById(deviceId).ifPresent(frame -> {
+                if (frameHash.equals(frame.getDeliveredFrameHash())) {
+                    return;
+                }
+                frame.setDeliveredFrameHash(frameHash);
+                frame.setDeliveredBinData(binData);
+                // 交付的就是目前幀時保留差分（設備可能稍後才經 frameUrl 下載）；
+                // 目前幀已被新版本取代時，差分需以新的基準重新計算
+                if (!frameHash.equals(frame.getFrameHash())) {
+                    updateDelta(frame);
+                }
+                frameRepository.save(frame);
+            });
+        }
+    }
+
+    /**
+     * 以已交付幀為基準計算目前幀的差分；差分不夠小時只發送完整幀
+     */
+    private static void updateDelta(DeviceFrame frame) {
+        frame.setDeltaBaseHash(null);
+        frame.setDeltaData(null);
+        if (frame.getDeliveredFrameHash() == null || frame.getDeliveredFrameHash().equals(frame.getFrameHash())) {
+            return;
+        }
+        int blockSize = frame.getDeltaBlockSize() > 0 ? frame.getDeltaBlockSize() : FrameEncoder.INTERLEAVE_BLOCK_SIZE;
+        byte[] delta = FrameDelta.encode(frame.getDeliveredBinData(), frame.getBinData(), blockSize);
+        if (delta != null && delta.length <= frame.getBinData().length * MAX_DELTA_RATIO) {
+            frame.setDeltaBaseHash(frame.getDeliveredFrameHash());
+            frame.setDeltaData(delta);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        batchPool.shutdownNow();
+    }
+
+    private Object renderLock(String deviceId) {
+        return renderLocks[Math.floorMod(deviceId.hashCode(), renderLocks.length)];
+    }
+
+    private boolean isCurrent(DeviceFrame frame, Device device) {
+        // 沒有幀雜湊的舊記錄視為過期，重新渲染
+        return frame.getContentVersion() == device.getContentVersion()
+                && Objects.equals(frame.getTemplateId(), device.getCurrentTemplateId())
+                && Objects.equals(frame.getRendererVersion(), rendererService.rendererVersion())
+                && frame.getFrameHash() != null;
+    }
+
+    /**
+     * 為 guestQRCode 元素填入設備的 token（沒有 token 時先生成並保存）
+     */
+    private void injectGuestQRCodeToken(Device device, List<Map<String, Object>> elements) {
+        String guestQRCodeToken = device.getGuestQRCodeToken();
+        if (guestQRCodeToken == null || guestQRCodeToken.isEmpty()) {
+            System.err.println("⚠️ Guest QR Code Token 為空，生成新的 token");
+            // 只在資料庫中仍沒有 token 時寫入；並發時沿用先寫入的 token
+            guestQRCodeToken = deviceRepository.ensureGuestQRCodeToken(device.getDeviceId(), UUID.randomUUID().toString());
+            lookupCache.invalidateDevice(device.getDeviceId());
+            device.setGuestQRCodeToken(guestQRCodeToken);
+            System.out.println("✅ 已生成新的 Guest QR Code Token: " + guestQRCodeToken);
+        }
+
+        for (Map<String, Object> element : elements) {
+            if ("guestQRCode".equals(element.get("type"))) {
+                element.put("guestQRCodeToken", guestQRCodeToken);
+            }
+        }
+    }
+
+    static List<Map<String, Object>> convertElementStylesToMap(List<ElementStyle> elementStyles) {
+        return elementStyles.stream()
+                .map(elementStyle -> {
+                    Map<String, Object> elementMap = new HashMap<>();
+                    elementMap.put("id", elementStyle.getId());
+                    elementMap.put("type", elementStyle.getType());
+                    elementMap.put("name", elementStyle.getName());
+                    elementMap.put("x", elementStyle.getX());
+                    elementMap.put("y", elementStyle.getY());
+                    elementMap.put("width", elementStyle.getWidth());
+                    elementMap.put("height", elementStyle.getHeight());
+                    elementMap.put("content", elementStyle.getContent());
+                    elementMap.put("text", elementStyle.getText());
+                    elementMap.put("fontSize", elementStyle.getFontSize());
+                    elementMap.put("color", elementStyle.getColor());
+                    elementMap.put("letterSpacing", elementStyle.getLetterSpacing());
+                    elementMap.put("textDirection", elementStyle.getTextDirection());
+                    elementMap.put("imageUrl", elementStyle.getImageUrl());
+                    elementMap.put("imageId", elementStyle.getImageId());
+                    elementMap.put("blackThreshold", elementStyle.getBlackThreshold());
+                    elementMap.put("whiteThreshold", elementStyle.getWhiteThreshold());
+                    elementMap.put("contrast", elementStyle.getContrast());
+
+                    // 添加 zIndex（如果 ElementStyle 有這個欄位，否則使用預設值）
+                    elementMap.put("zIndex", 1); // 預設值，如果 ElementStyle 有 zIndex 欄位可以從那裡獲取
+
+                    return elementMap;
+                })
+                .collect(Collectors.toList());
+    }
+}
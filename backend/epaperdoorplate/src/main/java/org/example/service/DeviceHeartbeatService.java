@@ -0,0 +1,138 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.model.Device;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 設備心跳寫回服務
+ * 設備每次輪詢只需更新 updatedAt 與 lastRefreshInterval，先記錄在記憶體中，
+ * 再定期以一次 bulk $set 寫入 MongoDB（同一設備在一個週期內多次輪詢只寫一次），不再整份重寫設備文件
+ * - 待寫入數量達到上限時提前寫入；應用關閉時寫入剩餘的心跳
+ * - 讀取設備列表時以記憶體中較新的心跳覆蓋資料庫的值
+ */
+@Service
+public class DeviceHeartbeatService {
+
+    private final MongoTemplate mongoTemplate;
+    private final int maxPending;
+    private final ScheduledExecutorService flusher;
+
+    private final ConcurrentHashMap<String, Heartbeat> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    public DeviceHeartbeatService(MongoTemplate mongoTemplate,
+                                  @Value("${device.heartbeat.flush-interval-seconds:5}") long flushIntervalSeconds,
+                                  @Value("${device.heartbeat.max-pending:5000}") int maxPending) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxPending = maxPending;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "device-heartbeat-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, flushIntervalSeconds);
+        this.flusher.scheduleWithFixedDelay(this::flushSafely, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 記錄設備輪詢（updatedAt 設為目前時間，lastRefreshInterval 設為設備目前的刷新間隔）
+     */
+    public void record(String deviceId, Integer refreshInterval) {
+        pending.put(deviceId, new Heartbeat(LocalDateTime.now(), refreshInterval));
+        if (pending.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushSafely);
+        }
+    }
+
+    /**
+     * 以尚未寫入的心跳覆蓋設備的 updatedAt / lastRefreshInterval（只影響傳入的物件）
+     */
+    public void applyPending(Device device) {
+        Heartbeat heartbeat = pending.get(device.getDeviceId());
+        if (heartbeat != null) {
+            device.setUpdatedAt(heartbeat.at());
+            device.setLastRefreshInterval(heartbeat.refreshInterval());
+        }
+    }
+
+    /**
+     * 將目前記錄的心跳寫入 MongoDB
+     * @return 寫入的設備數
+     */
+    public int flush() {
+        flushRequested.set(false);
+        List<Map.Entry<String, Heartbeat>> batch = new ArrayList<>();
+        for (String deviceId : pending.keySet()) {
+            Heartbeat heartbeat = pending.remove(deviceId);
+            if (heartbeat != null) {
+                batch.add(Map.entry(deviceId, heartbeat));
+            }
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Device.class);
+        for (Map.Entry<String, Heartbeat> entry : batch) {
+            Heartbeat heartbeat = entry.getValue();
+            bulk.updateOne(Query.query(Criteria.where("deviceId").is(entry.getKey())),
+                    new Update().set("updatedAt", heartbeat.at()).set("lastRefreshInterval", heartbeat.refreshInterval()));
+        }
+        try {
+            bulk.execute();
+        } catch (RuntimeException e) {
+            // 寫入失敗時放回（期間已有更新的心跳則保留較新的）
+            for (Map.Entry<String, Heartbeat> entry : batch) {
+                pending.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            throw e;
+        }
+        return batch.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            int count = flush();
+            if (count > 0) {
+                System.out.println("✅ 關閉前已寫入 " + count + " 台設備的心跳");
+            }
+        } catch (Exception e) {
+            System.err.println("❌ 關閉前寫入心跳失敗: " + e.getMessage());
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("❌ 寫入設備心跳失敗: " + e.getMessage());
+        }
+    }
+
+    private record Heartbeat(LocalDateTime at, Integer refreshInterval) {
+    }
+}
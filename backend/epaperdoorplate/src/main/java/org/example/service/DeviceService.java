@@ -2,23 +2,36 @@ package org.example.service;
 
 import org.example.model.ActivationCode;
 import org.example.model.Device;
+import org.example.model.DeviceFrame;
+import org.example.model.DisplayProfile;
 import org.example.model.HardwareWhitelist;
 import org.example.model.User;
 import org.example.repository.ActivationCodeRepository;
 import org.example.repository.DeviceRepository;
 import org.example.repository.HardwareWhitelistRepository;
 import org.example.repository.UserRepository;
+import org.example.service.cache.LookupCacheService;
+import org.example.service.render.PackBits;
+import org.example.service.render.RenderMode;
+import org.example.service.render.RenderPriority;
+import org.example.service.render.RenderRejectedException;
+import org.example.service.transfer.TransferState;
+import org.example.service.transfer.TransferStateTracker;
+import org.example.service.transfer.TransferStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
@@ -42,41 +55,36 @@ public class DeviceService {
     @Autowired
     private DoorplateLayoutService layoutService;
 
+    @Autowired
+    private DeviceFrameService frameService;
+
+    @Autowired
+    private DeviceHeartbeatService heartbeatService;
+
+    @Autowired
+    private LookupCacheService lookupCache;
+
+    @Autowired
+    private TransferStateTracker transferTracker;
+
     private static final SecureRandom RANDOM = new SecureRandom();
-    
-    // 传输状态枚举
-    public enum TransferStatus {
-        IN_PROGRESS,  // 正在传输
-        SUCCESS,      // 渲染成功
-        FAILED        // 渲染失败
-    }
-    
-    // 传输状态信息类
-    public static class TransferStatusInfo {
-        private TransferStatus status;
-        private long startTime;
-        private String errorMessage; // 失败时的错误信息
-        
-        public TransferStatusInfo(TransferStatus status, long startTime) {
-            this.status = status;
-            this.startTime = startTime;
-        }
-        
-        public TransferStatusInfo(TransferStatus status, long startTime, String errorMessage) {
-            this.status = status;
-            this.startTime = startTime;
-            this.errorMessage = errorMessage;
+
+    /**
+     * 啟動時遷移舊版儲存的 needUpdate 欄位（改為以內容版本判斷是否需要更新，
+     * 舊欄位為 true 的設備沒有對應的版本差，不遷移會遺失待交付的變更）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyNeedUpdate() {
+        try {
+            long pending = deviceRepository.migrateLegacyNeedUpdate();
+            if (pending > 0) {
+                System.out.println("✅ 已遷移舊版 needUpdate 欄位，待交付更新的設備數: " + pending);
+            }
+        } catch (Exception e) {
+            // 下次啟動會再次遷移；期間舊欄位為 true 的設備暫不交付
+            System.err.println("❌ 遷移舊版 needUpdate 欄位失敗: " + e.getMessage());
         }
-        
-        public TransferStatus getStatus() { return status; }
-        public long getStartTime() { return startTime; }
-        public String getErrorMessage() { return errorMessage; }
-        public void setStatus(TransferStatus status) { this.status = status; }
-        public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
     }
-    
-    // 跟踪设备传输状态（deviceId -> 传输状态信息）
-    private final Map<String, TransferStatusInfo> transferringDevices = new ConcurrentHashMap<>();
 
     public Map<String, Object> activate(String uniqueId) {
         System.out.println("\n========== 設備激活API ==========");
@@ -100,13 +108,13 @@ public class DeviceService {
                 String deviceId = device.getDeviceId();
                 System.out.println("✅ 設備已激活，返回狀態資訊");
                 System.out.println("   - deviceID: " + deviceId);
-                System.out.println("   - needUpdate: " + device.isNeedUpdate());
+                System.out.println("   - needUpdate: " + device.needsUpdate());
                 System.out.println("   - currentTemplateId: " + device.getCurrentTemplateId());
                 
-                // 設備發送 activate 請求時，也更新最後更新時間和最後使用的刷新間隔
+                // 設備發送 activate 請求時，也更新最後更新時間和最後使用的刷新間隔（由心跳服務批次寫入）
                 device.setUpdatedAt(LocalDateTime.now());
                 device.setLastRefreshInterval(device.getRefreshInterval());
-                deviceRepository.save(device);
+                heartbeatService.record(deviceId, device.getRefreshInterval());
                 System.out.println("   - 已更新最後更新時間: " + device.getUpdatedAt());
                 System.out.println("   - 已記錄最後使用的刷新間隔: " + device.getLastRefreshInterval() + "秒");
                 
@@ -115,7 +123,7 @@ public class DeviceService {
                 resp.put("alreadyActivated", true);
                 resp.put("deviceID", deviceId);
                 resp.put("isActivated", true);
-                resp.put("needUpdate", device.isNeedUpdate());
+                resp.put("needUpdate", device.needsUpdate());
                 resp.put("refreshInterval", device.getRefreshInterval());
                 
                 // 注意：activate 不再回傳 binData / binSize，統一交由 /device/status 負責
@@ -176,7 +184,7 @@ public class DeviceService {
                 
                 // 為現有激活碼也生成 binData
                 String code = validCode.getActivationCode();
-                generateBinDataForActivationCode(resp, code);
+                generateBinDataForActivationCode(resp, code, existingDevice.map(Device::getDisplayProfile).orElse(null));
                 
                 return resp;
             }
@@ -202,7 +210,7 @@ public class DeviceService {
         resp.put("expire_at", null);
         
         // 生成 binData
-        generateBinDataForActivationCode(resp, code);
+        generateBinDataForActivationCode(resp, code, existingDevice.map(Device::getDisplayProfile).orElse(null));
         
         return resp;
     }
@@ -211,8 +219,9 @@ public class DeviceService {
      * 為激活碼生成 binData 並添加到響應中
      * @param resp 響應 Map
      * @param code 激活碼
+     * @param displayProfile 設備的面板規格（曾經綁定過的設備才有，null 時使用預設規格）
      */
-    private void generateBinDataForActivationCode(Map<String, Object> resp, String code) {
+    private void generateBinDataForActivationCode(Map<String, Object> resp, String code, DisplayProfile displayProfile) {
         // 嘗試找到並渲染激活碼顯示佈局
         try {
             System.out.println("🔄 開始查找激活碼顯示佈局");
@@ -221,7 +230,7 @@ public class DeviceService {
             if (layoutOpt.isPresent()) {
                 System.out.println("✅ 找到激活碼顯示佈局 (superUser/EP)");
                 org.example.model.DoorplateLayout layout = layoutOpt.get();
-                List<Map<String, Object>> elements = convertElementStylesToMap(layout.getElements());
+                List<Map<String, Object>> elements = DeviceFrameService.convertElementStylesToMap(layout.getElements());
                 
                 // 找到 Name="activationCode" 的元素並更新其 text
                 boolean foundActivationCodeElement = false;
@@ -248,7 +257,8 @@ public class DeviceService {
                 
                 // 渲染門牌並獲取 bin 數據
                 System.out.println("🚀 開始渲染激活碼顯示門牌");
-                DoorplateRendererService.RenderResult result = rendererService.renderDoorplate(elements, layout.getId());
+                DoorplateRendererService.RenderResult result = rendererService.renderDoorplate(elements, layout.getId(),
+                        DisplayProfile.resolve(displayProfile), RenderPriority.ACTIVATION, RenderMode.BIN_ONLY);
                 byte[] binData = result.getBinData();
                 
                 if (binData != null && binData.length > 0) {
@@ -264,6 +274,10 @@ public class DeviceService {
             } else {
                 System.out.println("⚠️ 未找到激活碼顯示佈局 (superUser/EP)，跳過 binData 生成");
             }
+        } catch (RenderRejectedException e) {
+            // 渲染繁忙：激活碼照常返回，設備稍後重試即可取得畫面
+            System.err.println("⚠️ 激活碼畫面渲染繁忙: " + e.getMessage());
+            resp.put("retryAfter", e.getRetryAfterSeconds());
         } catch (Exception e) {
             System.err.println("❌ 處理激活碼顯示佈局失敗: " + e.getMessage());
             e.printStackTrace();
@@ -303,7 +317,6 @@ public class DeviceService {
         if (device.getRefreshInterval() == null) {
             device.setRefreshInterval(300); // default 5 minutes
         }
-        device.setNeedUpdate(false);
         device.setForceNoUpdate(false); // 默認不強制不更新
         device.setUnbound(false);
 
@@ -321,14 +334,17 @@ public class DeviceService {
         }
 
         deviceRepository.save(device);
+        lookupCache.invalidateDevice(deviceId);
 
         // 如果是新設備，設置默認的 currentTemplateId
         if (isNewDevice) {
             String defaultTemplateId = "6913570d276a830231a0c319";
             device.setCurrentTemplateId(defaultTemplateId);
-            device.setNeedUpdate(true); // 新設備需要更新以顯示默認模板
+            device.setContentVersion(device.getContentVersion() + 1); // 新設備需要更新以顯示默認模板
             deviceRepository.save(device);
+            lookupCache.invalidateDevice(deviceId);
             System.out.println("✅ 新設備已設置默認模板 ID: " + defaultTemplateId);
+            frameService.requestRender(deviceId);
         }
 
         // 綁定成功後，可以刪除此激活碼避免重複使用
@@ -344,58 +360,71 @@ public class DeviceService {
 
     public Map<String, Object> update(String deviceId, String deviceName, Integer refreshInterval, Boolean forceNoUpdate) {
         Map<String, Object> resp = new HashMap<>();
-        Optional<Device> devOpt = deviceRepository.findByDeviceId(deviceId);
+        // 驗證刷新間隔必須 >= 300 秒
+        if (refreshInterval != null && refreshInterval < 300) {
+            resp.put("success", false);
+            resp.put("message", "刷新間隔必須至少 300 秒");
+            return resp;
+        }
+        // 欄位級原子更新（是否需要更新由內容版本決定，關閉強制不更新後未顯示的版本會再交付）
+        // 注意：updatedAt 只在設備發送 Status 請求時更新，不在這裡更新
+        Optional<Device> devOpt = deviceRepository.updateSettings(deviceId, deviceName, refreshInterval, forceNoUpdate);
+        lookupCache.invalidateDevice(deviceId);
         if (devOpt.isEmpty()) {
             resp.put("success", false);
             resp.put("message", "device not found");
             return resp;
         }
         Device device = devOpt.get();
-        if (deviceName != null && !deviceName.isBlank()) {
-            device.setDeviceName(deviceName);
+        // 確保設備下次請求時已有預渲染的幀
+        if (device.getCurrentTemplateId() != null) {
+            frameService.requestRender(deviceId);
         }
-        if (refreshInterval != null) {
-            // 驗證刷新間隔必須 >= 300 秒
-            if (refreshInterval < 300) {
+
+        resp.put("success", true);
+        return resp;
+    }
+
+    /**
+     * 設定設備的顯示面板規格（null 表示恢復預設），變更後遞增內容版本並重新預渲染
+     */
+    public Map<String, Object> updateDisplayProfile(String deviceId, DisplayProfile displayProfile) {
+        Map<String, Object> resp = new HashMap<>();
+        if (displayProfile != null) {
+            try {
+                displayProfile.validate();
+            } catch (IllegalArgumentException e) {
                 resp.put("success", false);
-                resp.put("message", "刷新間隔必須至少 300 秒");
+                resp.put("message", e.getMessage());
                 return resp;
             }
-            device.setRefreshInterval(refreshInterval);
         }
-        if (forceNoUpdate != null) {
-            device.setForceNoUpdate(forceNoUpdate);
-            // 如果強制不更新為 true，則 needUpdate 永遠為 false
-            if (forceNoUpdate) {
-                device.setNeedUpdate(false);
-            }
+        Optional<Device> devOpt = deviceRepository.updateDisplayProfile(deviceId, displayProfile);
+        lookupCache.invalidateDevice(deviceId);
+        if (devOpt.isEmpty()) {
+            resp.put("success", false);
+            resp.put("message", "device not found");
+            return resp;
         }
-        // 只有在強制不更新為 false 時，才設置 needUpdate = true
-        if (!device.isForceNoUpdate()) {
-            device.setNeedUpdate(true);
+        Device device = devOpt.get();
+        if (device.getCurrentTemplateId() != null) {
+            frameService.requestRender(deviceId);
         }
-        // 注意：updatedAt 只在設備發送 Status 請求時更新，不在這裡更新
-        deviceRepository.save(device);
 
         resp.put("success", true);
+        resp.put("displayProfile", DisplayProfile.resolve(displayProfile));
         return resp;
     }
 
     public Map<String, Object> unbind(String deviceId) {
         Map<String, Object> resp = new HashMap<>();
-        Optional<Device> devOpt = deviceRepository.findByDeviceId(deviceId);
-        if (devOpt.isEmpty()) {
+        boolean unbound = deviceRepository.markUnbound(deviceId);
+        lookupCache.invalidateDevice(deviceId);
+        if (!unbound) {
             resp.put("success", false);
             resp.put("message", "device not found");
             return resp;
         }
-        Device device = devOpt.get();
-        device.setActivated(false);
-        device.setUnbound(true);
-        device.setNeedUpdate(false);
-        device.setCurrentDoorplateId(null);
-        device.setUpdatedAt(LocalDateTime.now());
-        deviceRepository.save(device);
         resp.put("success", true);
         return resp;
     }
@@ -404,14 +433,32 @@ public class DeviceService {
         return status(deviceId, true); // 默認是設備請求，會改變狀態
     }
 
-    @Transactional
     public Map<String, Object> status(String deviceId, boolean isDeviceRequest) {
+        return status(deviceId, isDeviceRequest, null, false, false, null); // 舊版韌體不帶幀雜湊，有未顯示的版本時返回 binData
+    }
+
+    /**
+     * @param currentFrameHash 設備目前顯示的幀雜湊（上次響應中的 frameHash），與目前幀相同時不返回 binData
+     * @param rawFrame 設備支援 /device/frame 二進位下載時為 true，響應只包含 frameUrl 而不內嵌 Base64 的 binData
+     * @param acceptDelta 設備支援差分幀時為 true，currentFrameHash 與差分基準一致時只返回變更的塊
+     * @param encoding 完整幀的編碼（null 或 raw 為原始 bin，rle 為 PackBits 壓縮）
+     */
+    @Transactional
+    public Map<String, Object> status(String deviceId, boolean isDeviceRequest, String currentFrameHash,
+                                      boolean rawFrame, boolean acceptDelta, String encoding) {
         System.out.println("\n========== 設備狀態查詢 ==========");
         System.out.println("設備ID: " + deviceId);
+        if (currentFrameHash != null) {
+            System.out.println("設備目前幀雜湊: " + currentFrameHash);
+        }
         System.out.println("請求來源: " + (isDeviceRequest ? "設備請求（會改變狀態）" : "前端查詢（不改變狀態）"));
         
-        Map<String, Object> resp = new HashMap<>();
-        Optional<Device> devOpt = deviceRepository.findByDeviceId(deviceId);
+        // 舊版韌體只在 binData 之前的前綴中查找 success、needUpdate、binSize 等字段：
+        // 響應按插入順序輸出，舊協議的字段放在最前面，新字段只返回給使用新協議的設備（帶幀雜湊、二進位下載、差分或壓縮）
+        boolean extendedProtocol = currentFrameHash != null || rawFrame || acceptDelta || encoding != null;
+        Map<String, Object> resp = new LinkedHashMap<>();
+        // 設備經由查詢快取讀取（返回副本，所有寫入路徑都會移除快取中的設備）
+        Optional<Device> devOpt = lookupCache.findDevice(deviceId, deviceRepository::findByDeviceId);
         if (devOpt.isEmpty()) {
             System.out.println("❌ 設備不存在");
             resp.put("success", false);
@@ -428,145 +475,147 @@ public class DeviceService {
         }
 
         System.out.println("✅ 設備已激活");
-        System.out.println("   - needUpdate: " + device.isNeedUpdate());
+        System.out.println("   - contentVersion: " + device.getContentVersion()
+                + "，deliveredVersion: " + device.getDeliveredVersion()
+                + "，displayedVersion: " + device.getDisplayedVersion());
         System.out.println("   - forceNoUpdate: " + device.isForceNoUpdate());
         System.out.println("   - currentTemplateId: " + device.getCurrentTemplateId());
         System.out.println("   - refreshInterval: " + device.getRefreshInterval());
 
-        // 如果強制不更新為 true，則 needUpdate 永遠為 false
-        // 但只有設備請求時才保存這個改變（前端查詢時只讀取狀態）
-        if (device.isForceNoUpdate()) {
-            if (isDeviceRequest) {
-                device.setNeedUpdate(false);
-                System.out.println("   - 強制不更新已啟用，將 needUpdate 設為 false（設備請求，已保存）");
-            } else {
-                System.out.println("   - 強制不更新已啟用，needUpdate 應為 false（前端查詢，不保存）");
-            }
-        }
-
         // 只有設備請求時才更新 updatedAt（最後更新時間）和 lastRefreshInterval
+        // 心跳記錄在記憶體中，由心跳服務定期批次寫入，不再每次輪詢整份保存設備文件
         if (isDeviceRequest) {
             device.setUpdatedAt(LocalDateTime.now());
             // 記錄設備本次更新時使用的刷新間隔，用於前端判斷離線狀態
             device.setLastRefreshInterval(device.getRefreshInterval());
-            deviceRepository.save(device);
+            heartbeatService.record(deviceId, device.getRefreshInterval());
             System.out.println("   - 已更新最後更新時間: " + device.getUpdatedAt());
             System.out.println("   - 已記錄最後使用的刷新間隔: " + device.getLastRefreshInterval() + "秒");
-            
-            // 注意：現在不再在這裡清除傳輸狀態，因為 ESP32 會主動發送 render-complete 消息
-            // 只有在超時時才自動清除
         }
 
+        // 是否需要更新由內容版本決定：有設備尚未確認顯示的版本（且未強制不更新）時為 true
+        // 交付不會清除這個狀態，設備以 render-complete 確認顯示成功後才算完成；繪製失敗時下次輪詢重送同一幀（不重新渲染）
+        boolean shouldGenerate = device.needsUpdate();
         resp.put("success", true);
         resp.put("isActivated", true);
-        // 如果強制不更新為 true，響應中的 needUpdate 應該為 false（即使前端查詢不保存）
-        boolean responseNeedUpdate = device.isForceNoUpdate() ? false : device.isNeedUpdate();
-        resp.put("needUpdate", responseNeedUpdate);
+        resp.put("needUpdate", shouldGenerate);
         resp.put("refreshInterval", device.getRefreshInterval());
+        if (extendedProtocol) {
+            resp.put("contentVersion", device.getContentVersion());
+        }
         
         // 如果有模板配置，嘗試獲取 bin 檔案
         if (device.getCurrentTemplateId() != null) {
+            if (isDeviceRequest && !shouldGenerate) {
+                // 設備已顯示目前版本（或強制不更新）：不讀取也不渲染幀
+                if (extendedProtocol) {
+                    resp.put("unchanged", true);
+                }
+                System.out.println("✅ 設備已顯示內容版本 " + device.getDisplayedVersion() + "，無需讀取幀");
+                return resp;
+            }
             System.out.println("📋 設備有模板配置，開始處理 bin 檔案");
             try {
-                // 檢查是否強制不更新
-                boolean shouldGenerate = device.isNeedUpdate() && !device.isForceNoUpdate();
-                System.out.println("   - needUpdate: " + device.isNeedUpdate());
-                System.out.println("   - forceNoUpdate: " + device.isForceNoUpdate());
-                System.out.println("   - 是否需要生成新檔案: " + shouldGenerate);
+                System.out.println("   - 是否有未顯示的內容版本: " + shouldGenerate);
                 
-                // 渲染門牌並獲取 bin 數據（不保存文件，直接返回）
-                System.out.println("🔄 開始渲染門牌並生成 bin 數據");
-                // 根據模板ID獲取模板數據
-                Optional<org.example.model.DoorplateLayout> layoutOpt = layoutService.findLayoutById(device.getCurrentTemplateId());
-                if (layoutOpt.isEmpty()) {
+                // 讀取預渲染的幀（佈局保存或模板變更時已在背景渲染），沒有時才同步渲染
+                Optional<DeviceFrame> frameOpt = frameService.getOrRenderFrame(device);
+                if (frameOpt.isEmpty()) {
                     resp.put("message", "template not found: " + device.getCurrentTemplateId());
                     return resp;
                 }
+                DeviceFrame frame = frameOpt.get();
+                System.out.println("📦 使用設備幀，contentVersion: " + frame.getContentVersion() + "，渲染時間: " + frame.getRenderedAt());
+                byte[] binData = frame.getBinData();
                 
-                org.example.model.DoorplateLayout layout = layoutOpt.get();
-                List<Map<String, Object>> elements = convertElementStylesToMap(layout.getElements());
-                
-                // 為 guestQRCode 元素添加 token
-                String guestQRCodeToken = device.getGuestQRCodeToken();
-                System.out.println("🔍 檢查 Guest QR Code Token");
-                System.out.println("   Device ID: " + deviceId);
-                System.out.println("   Token: " + (guestQRCodeToken != null ? guestQRCodeToken : "null"));
-                
-                if (guestQRCodeToken == null || guestQRCodeToken.isEmpty()) {
-                    System.err.println("⚠️ Guest QR Code Token 為空，生成新的 token");
-                    guestQRCodeToken = UUID.randomUUID().toString();
-                    device.setGuestQRCodeToken(guestQRCodeToken);
-                    deviceRepository.save(device);
-                    System.out.println("✅ 已生成新的 Guest QR Code Token: " + guestQRCodeToken);
+                boolean unchanged = currentFrameHash != null && currentFrameHash.equalsIgnoreCase(frame.getFrameHash());
+                if (extendedProtocol) {
+                    resp.put("frameHash", frame.getFrameHash());
+                    resp.put("unchanged", unchanged);
                 }
-                
-                int guestQRCodeCount = 0;
-                System.out.println("🔍 開始檢查所有元素，總數: " + elements.size());
-                for (Map<String, Object> element : elements) {
-                    String elementType = (String) element.get("type");
-                    System.out.println("   元素類型: " + elementType + ", ID: " + element.get("id"));
-                    if ("guestQRCode".equals(elementType)) {
-                        guestQRCodeCount++;
-                        element.put("guestQRCodeToken", guestQRCodeToken);
-                        System.out.println("✅ 已為 Guest QR Code 元素添加 token");
-                        System.out.println("   元素 ID: " + element.get("id"));
-                        System.out.println("   元素位置: x=" + element.get("x") + ", y=" + element.get("y"));
-                        System.out.println("   Token 值: " + guestQRCodeToken);
-                        System.out.println("   添加後元素所有鍵: " + element.keySet());
-                        System.out.println("   驗證 token 是否存在: " + element.containsKey("guestQRCodeToken"));
-                        System.out.println("   驗證 token 值: " + element.get("guestQRCodeToken"));
+                if (unchanged) {
+                    // 設備顯示的已是目前的幀：不重送 binData，也不標記傳輸
+                    resp.put("needUpdate", false);
+                    // 設備回報的幀雜湊即為已顯示的證明，記錄為已顯示這一幀的內容版本
+                    if (shouldGenerate && isDeviceRequest) {
+                        deviceRepository.recordDisplayed(deviceId, frame.getContentVersion());
+                        lookupCache.invalidateDevice(deviceId);
                     }
-                }
-                
-                if (guestQRCodeCount == 0) {
-                    System.out.println("ℹ️ 模板中沒有 Guest QR Code 元素");
-                } else {
-                    System.out.println("📊 找到 " + guestQRCodeCount + " 個 Guest QR Code 元素");
-                }
-                
-                // 再次驗證 token 是否還在 elements 中
-                System.out.println("🔍 傳遞給 rendererService 前的最後檢查:");
-                for (Map<String, Object> element : elements) {
-                    if ("guestQRCode".equals(element.get("type"))) {
-                        System.out.println("   Guest QR Code 元素 - Token: " + element.get("guestQRCodeToken"));
-                        System.out.println("   元素所有鍵: " + element.keySet());
+                    if (isDeviceRequest && !frame.getFrameHash().equals(frame.getDeliveredFrameHash())) {
+                        frameService.markDelivered(deviceId, frame.getFrameHash(), binData);
                     }
-                }
-                
-                // 渲染門牌（直接返回數據，不保存文件）
-                System.out.println("🚀 調用 rendererService.renderDoorplate，傳遞 " + elements.size() + " 個元素");
-                DoorplateRendererService.RenderResult result = rendererService.renderDoorplate(elements, device.getCurrentTemplateId());
-                byte[] binData = result.getBinData();
-                
-                if (binData != null && binData.length > 0) {
+                    System.out.println("✅ 設備畫面已是最新（frameHash 相同），不返回 binData");
+                } else if (binData != null && binData.length > 0) {
                     // 標記設備正在傳輸（僅在設備請求時標記，前端查詢不標記）
                     if (isDeviceRequest) {
-                        transferringDevices.put(deviceId, new TransferStatusInfo(TransferStatus.IN_PROGRESS, System.currentTimeMillis()));
+                        transferTracker.markInProgress(deviceId);
                         System.out.println("📤 標記設備為正在傳輸: " + deviceId);
                     }
                     
-                    String base64Data = java.util.Base64.getEncoder().encodeToString(binData);
-                    resp.put("binData", base64Data);
                     resp.put("binSize", binData.length);
+                    boolean sendDelta = acceptDelta && frame.getDeltaData() != null
+                            && currentFrameHash != null && currentFrameHash.equalsIgnoreCase(frame.getDeltaBaseHash());
+                    if (extendedProtocol) {
+                        resp.put("frameType", sendDelta ? "delta" : "full");
+                    }
+                    if (sendDelta) {
+                        // 只發送與設備目前畫面不同的塊，設備可做局部刷新
+                        byte[] deltaData = frame.getDeltaData();
+                        resp.put("deltaSize", deltaData.length);
+                        resp.put("deltaBaseHash", frame.getDeltaBaseHash());
+                        if (rawFrame) {
+                            resp.put("frameUrl", "/device/frame/delta?deviceID=" + deviceId + "&baseHash=" + frame.getDeltaBaseHash());
+                        } else {
+                            resp.put("deltaData", java.util.Base64.getEncoder().encodeToString(deltaData));
+                        }
+                        System.out.println("✅ 返回差分幀，大小: " + deltaData.length + " bytes（完整幀 " + binData.length + " bytes）");
+                    } else {
+                        boolean rle = PackBits.ENCODING.equalsIgnoreCase(encoding);
+                        byte[] payload = frameService.getEncodedBin(frame, encoding);
+                        if (rle) {
+                            resp.put("binEncoding", PackBits.ENCODING);
+                            resp.put("encodedSize", payload.length);
+                            System.out.println("   - PackBits 壓縮後大小: " + payload.length + " bytes");
+                        }
+                        if (rawFrame) {
+                            // 只返回幀引用，設備再以 GET /device/frame 下載原始位元組（無 Base64 開銷）
+                            resp.put("frameUrl", "/device/frame?deviceID=" + deviceId + "&frameHash=" + frame.getFrameHash()
+                                    + (rle ? "&encoding=" + PackBits.ENCODING : ""));
+                            System.out.println("✅ 返回幀引用: " + resp.get("frameUrl"));
+                        } else {
+                            String base64Data = java.util.Base64.getEncoder().encodeToString(payload);
+                            resp.put("binData", base64Data);
+                            System.out.println("   - Base64 大小: " + base64Data.length() + " 字符");
+                        }
+                    }
                     
-                    // 如果需要更新，且是設備請求（不是前端查詢），才標記為已更新
+                    if (isDeviceRequest) {
+                        frameService.markDelivered(deviceId, frame.getFrameHash(), binData);
+                    }
+                    
+                    // 設備請求時記錄已交付的版本（重複交付同一版本不變），等待設備以 render-complete 確認顯示
                     if (shouldGenerate && isDeviceRequest) {
-                        device.setNeedUpdate(false);
-                        deviceRepository.save(device);
-                        System.out.println("✅ 生成並返回 bin 數據（設備請求，已標記為已更新，needUpdate 設為 false）:");
+                        if (device.getDeliveredVersion() < frame.getContentVersion()) {
+                            deviceRepository.recordDelivered(deviceId, frame.getContentVersion());
+                            lookupCache.invalidateDevice(deviceId);
+                        }
+                        System.out.println("✅ 返回 bin 數據（設備請求，已交付內容版本 " + frame.getContentVersion() + "，等待設備確認顯示）:");
                     } else if (shouldGenerate && !isDeviceRequest) {
-                        System.out.println("✅ 返回 bin 數據（前端查詢，不改變 needUpdate 狀態）:");
+                        System.out.println("✅ 返回 bin 數據（前端查詢，不改變交付狀態）:");
                     } else {
                         System.out.println("✅ 返回 bin 數據（無需更新）:");
                     }
                     
                     System.out.println("   - 原始大小: " + binData.length + " bytes");
-                    System.out.println("   - Base64 大小: " + base64Data.length() + " 字符");
-                    System.out.println("   - 響應中包含 binData: 是");
+                    System.out.println("   - 響應中包含 binData: " + (rawFrame || sendDelta ? "否" : "是"));
                 } else {
                     System.out.println("❌ bin 數據為空或未生成");
                     resp.put("message", "bin data not generated");
                 }
+            } catch (RenderRejectedException e) {
+                System.err.println("⚠️ 渲染繁忙: " + e.getMessage());
+                resp.put("message", "renderer busy: " + e.getMessage());
+                resp.put("retryAfter", e.getRetryAfterSeconds());
             } catch (Exception e) {
                 System.err.println("❌ 處理 bin 檔案失敗: " + e.getMessage());
                 e.printStackTrace();
@@ -616,6 +665,22 @@ public class DeviceService {
         return resp;
     }
 
+    /**
+     * 讀取設備目前的幀（供 GET /device/frame 以二進位返回）
+     * @return 幀；設備不存在、未激活、沒有模板或模板不存在時返回 empty
+     */
+    public Optional<DeviceFrame> getCurrentFrame(String deviceId) {
+        Optional<Device> devOpt = lookupCache.findDevice(deviceId, deviceRepository::findByDeviceId);
+        if (devOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        Device device = devOpt.get();
+        if (!device.isActivated() || device.isUnbound() || device.getCurrentTemplateId() == null) {
+            return Optional.empty();
+        }
+        return frameService.getOrRenderFrame(device);
+    }
+
     /**
      * 生成複雜的激活碼（包含大小寫字母和數字）
      * 格式：12-16位字符，包含大寫字母、小寫字母和數字
@@ -669,77 +734,62 @@ public class DeviceService {
         return sb.toString();
     }
 
-    // 查詢設備是否正在傳輸數據
+    // 查詢設備是否正在傳輸數據（超時的記錄由追蹤器自動移除）
     public boolean isDeviceTransferring(String deviceId) {
-        if (!transferringDevices.containsKey(deviceId)) {
-            return false;
-        }
-        
-        TransferStatusInfo statusInfo = transferringDevices.get(deviceId);
-        
-        // 如果狀態是 SUCCESS 或 FAILED，表示已完成，不再傳輸
-        if (statusInfo.getStatus() == TransferStatus.SUCCESS || statusInfo.getStatus() == TransferStatus.FAILED) {
-            return false;
-        }
-        
-        // 檢查傳輸是否超時（超過5分鐘認為已超時，自動清除）
-        long elapsed = System.currentTimeMillis() - statusInfo.getStartTime();
-        if (elapsed > 5 * 60 * 1000) { // 5分鐘超時
-            transferringDevices.remove(deviceId);
-            System.out.println("⏱️ 設備傳輸超時，自動清除: " + deviceId);
-            return false;
-        }
-        
-        return statusInfo.getStatus() == TransferStatus.IN_PROGRESS;
+        return transferTracker.isTransferring(deviceId);
     }
     
     // 獲取設備傳輸狀態（用於前端顯示）
     public TransferStatus getDeviceTransferStatus(String deviceId) {
-        if (!transferringDevices.containsKey(deviceId)) {
-            return null;
-        }
-        return transferringDevices.get(deviceId).getStatus();
+        return transferTracker.get(deviceId).map(TransferState::status).orElse(null);
     }
     
     // 獲取設備傳輸錯誤信息
     public String getDeviceTransferErrorMessage(String deviceId) {
-        if (!transferringDevices.containsKey(deviceId)) {
-            return null;
-        }
-        return transferringDevices.get(deviceId).getErrorMessage();
+        return transferTracker.get(deviceId).map(TransferState::errorMessage).orElse(null);
     }
     
     // 清除設備的傳輸狀態（當傳輸完成時調用）
     public void clearTransferringStatus(String deviceId) {
-        transferringDevices.remove(deviceId);
+        transferTracker.clear(deviceId);
         System.out.println("✅ 清除設備傳輸狀態: " + deviceId);
     }
     
-    // 處理設備渲染完成消息
-    public Map<String, Object> handleRenderComplete(String deviceId, String status, String errorMessage) {
+    /**
+     * 處理設備渲染完成消息
+     * 成功時把 displayedVersion 提高到確認的版本；失敗時不變，下次輪詢會重送同一幀
+     * @param version 設備顯示的內容版本（狀態響應中的 contentVersion），舊版韌體不帶時視為最後交付的版本
+     */
+    public Map<String, Object> handleRenderComplete(String deviceId, String status, String errorMessage, Long version) {
         Map<String, Object> resp = new HashMap<>();
-        
-        // 如果設備不在傳輸狀態中，創建一個新的狀態記錄（可能是超時清除或服務重啟）
-        TransferStatusInfo statusInfo;
-        if (!transferringDevices.containsKey(deviceId)) {
-            System.out.println("⚠️ 設備不在傳輸狀態中，創建新狀態記錄: " + deviceId);
-            statusInfo = new TransferStatusInfo(TransferStatus.IN_PROGRESS, System.currentTimeMillis());
-            transferringDevices.put(deviceId, statusInfo);
-        } else {
-            statusInfo = transferringDevices.get(deviceId);
+        if (!"success".equalsIgnoreCase(status) && !"failed".equalsIgnoreCase(status)) {
+            resp.put("success", false);
+            resp.put("message", "invalid status: " + status);
+            return resp;
         }
         
+        // 設備不在傳輸狀態中時（已超時清除）追蹤器以目前時間建立記錄
         if ("success".equalsIgnoreCase(status)) {
-            statusInfo.setStatus(TransferStatus.SUCCESS);
-            System.out.println("✅ 設備渲染成功: " + deviceId);
-        } else if ("failed".equalsIgnoreCase(status)) {
-            statusInfo.setStatus(TransferStatus.FAILED);
-            statusInfo.setErrorMessage(errorMessage);
-            System.out.println("❌ 設備渲染失敗: " + deviceId + (errorMessage != null ? ", 錯誤: " + errorMessage : ""));
+            // 舊版韌體不帶版本，只有確實有交付中的傳輸時才確認最後交付的版本；
+            // 否則（重複或延遲的回報、交付前的回報）無法判斷設備顯示的是哪個版本，忽略
+            if (version == null && !transferTracker.isTransferring(deviceId)) {
+                System.out.println("⚠️ 設備回報渲染成功但沒有交付中的傳輸，且未帶版本，忽略: " + deviceId);
+                resp.put("success", true);
+                resp.put("message", "no transfer in progress, ignored");
+                return resp;
+            }
+            transferTracker.complete(deviceId, true, null);
+            OptionalLong displayed = deviceRepository.acknowledgeDisplayed(deviceId, version);
+            lookupCache.invalidateDevice(deviceId);
+            if (displayed.isPresent()) {
+                resp.put("displayedVersion", displayed.getAsLong());
+                System.out.println("✅ 設備渲染成功: " + deviceId + "，已顯示內容版本: " + displayed.getAsLong());
+            } else {
+                System.out.println("⚠️ 設備渲染成功，但版本未交付過，不更新已顯示版本: " + deviceId + "，version: " + version);
+            }
         } else {
-            resp.put("success", false);
-            resp.put("message", "invalid status: " + status);
-            return resp;
+            transferTracker.complete(deviceId, false, errorMessage);
+            System.out.println("❌ 設備渲染失敗: " + deviceId + (errorMessage != null ? ", 錯誤: " + errorMessage : "") + "（下次輪詢重送）");
         }
         
         resp.put("success", true);
@@ -759,9 +809,12 @@ public class DeviceService {
         // 獲取用戶的所有已綁定且未解除綁定的設備
         java.util.List<Device> userDevices = deviceRepository.findByUserIdAndUnboundFalse(user.getId());
         
-        // 為每個設備添加傳輸狀態
+        // 為每個設備添加傳輸狀態（共用存儲時以一次查詢取得其他節點的狀態）
+        Map<String, TransferState> transfers = transferTracker.getAll(userDevices.stream().map(Device::getDeviceId).toList());
         List<Map<String, Object>> devicesWithStatus = new java.util.ArrayList<>();
         for (Device device : userDevices) {
+            // 尚未寫入資料庫的心跳較新
+            heartbeatService.applyPending(device);
             Map<String, Object> deviceMap = new HashMap<>();
             deviceMap.put("id", device.getId());
             deviceMap.put("deviceId", device.getDeviceId());
@@ -770,25 +823,26 @@ public class DeviceService {
             deviceMap.put("isActivated", device.isActivated());
             deviceMap.put("refreshInterval", device.getRefreshInterval());
             deviceMap.put("lastRefreshInterval", device.getLastRefreshInterval());
-            deviceMap.put("needUpdate", device.isNeedUpdate());
+            deviceMap.put("needUpdate", device.needsUpdate());
+            deviceMap.put("contentVersion", device.getContentVersion());
+            deviceMap.put("deliveredVersion", device.getDeliveredVersion());
+            deviceMap.put("displayedVersion", device.getDisplayedVersion());
             deviceMap.put("forceNoUpdate", device.isForceNoUpdate());
             deviceMap.put("updatedAt", device.getUpdatedAt());
             deviceMap.put("createdAt", device.getCreatedAt());
             deviceMap.put("currentTemplateId", device.getCurrentTemplateId());
             
             // 檢查傳輸狀態
-            boolean isTransferring = isDeviceTransferring(device.getDeviceId());
-            TransferStatus transferStatus = getDeviceTransferStatus(device.getDeviceId());
-            String transferErrorMessage = getDeviceTransferErrorMessage(device.getDeviceId());
+            TransferState transfer = transfers.get(device.getDeviceId());
             
             // 注意：現在不再在這裡清除傳輸狀態，因為 ESP32 會主動發送 render-complete 消息
-            // 只有在超時時才自動清除（在 isDeviceTransferring 中處理）
+            // 超時或保留時間到期的記錄由追蹤器自動移除
             
-            deviceMap.put("isTransferring", isTransferring);
-            if (transferStatus != null) {
-                deviceMap.put("transferStatus", transferStatus.name()); // IN_PROGRESS, SUCCESS, FAILED
-                if (transferErrorMessage != null) {
-                    deviceMap.put("transferErrorMessage", transferErrorMessage);
+            deviceMap.put("isTransferring", transfer != null && transfer.status() == TransferStatus.IN_PROGRESS);
+            if (transfer != null) {
+                deviceMap.put("transferStatus", transfer.status().name()); // IN_PROGRESS, SUCCESS, FAILED
+                if (transfer.errorMessage() != null) {
+                    deviceMap.put("transferErrorMessage", transfer.errorMessage());
                 }
             }
             devicesWithStatus.add(deviceMap);
@@ -802,24 +856,17 @@ public class DeviceService {
 
     public Map<String, Object> updateDeviceTemplate(String deviceId, String templateId) {
         Map<String, Object> resp = new HashMap<>();
-        Optional<Device> devOpt = deviceRepository.findByDeviceId(deviceId);
+        // 欄位級原子更新：設定模板並遞增內容版本（設備確認顯示新版本前 needUpdate 都為 true）
+        // 注意：updatedAt 只在設備發送 Status 請求時更新，不在這裡更新
+        Optional<Device> devOpt = deviceRepository.changeTemplate(deviceId, templateId);
+        lookupCache.invalidateDevice(deviceId);
         if (devOpt.isEmpty()) {
             resp.put("success", false);
             resp.put("message", "device not found");
             return resp;
         }
-        
-        Device device = devOpt.get();
-        device.setCurrentTemplateId(templateId);
-        // 如果強制不更新為 true，則 needUpdate 永遠為 false
-        if (device.isForceNoUpdate()) {
-            device.setNeedUpdate(false);
-        } else {
-            // 只有在強制不更新為 false 時，才設置 needUpdate = true
-            device.setNeedUpdate(true);
-        }
-        // 注意：updatedAt 只在設備發送 Status 請求時更新，不在這裡更新
-        deviceRepository.save(device);
+        // 在背景預渲染新模板，設備請求時直接讀取
+        frameService.requestRender(deviceId);
         
         resp.put("success", true);
         resp.put("message", "device template updated");
@@ -830,37 +877,6 @@ public class DeviceService {
         return UUID.randomUUID().toString();
     }
 
-
-    private List<Map<String, Object>> convertElementStylesToMap(List<org.example.model.ElementStyle> elementStyles) {
-        return elementStyles.stream()
-                .map(elementStyle -> {
-                    Map<String, Object> elementMap = new HashMap<>();
-                    elementMap.put("id", elementStyle.getId());
-                    elementMap.put("type", elementStyle.getType());
-                    elementMap.put("name", elementStyle.getName());
-                    elementMap.put("x", elementStyle.getX());
-                    elementMap.put("y", elementStyle.getY());
-                    elementMap.put("width", elementStyle.getWidth());
-                    elementMap.put("height", elementStyle.getHeight());
-                    elementMap.put("content", elementStyle.getContent());
-                    elementMap.put("text", elementStyle.getText());
-                    elementMap.put("fontSize", elementStyle.getFontSize());
-                    elementMap.put("color", elementStyle.getColor());
-                    elementMap.put("letterSpacing", elementStyle.getLetterSpacing());
-                    elementMap.put("textDirection", elementStyle.getTextDirection());
-                    elementMap.put("imageUrl", elementStyle.getImageUrl());
-                    elementMap.put("imageId", elementStyle.getImageId());
-                    elementMap.put("blackThreshold", elementStyle.getBlackThreshold());
-                    elementMap.put("whiteThreshold", elementStyle.getWhiteThreshold());
-                    elementMap.put("contrast", elementStyle.getContrast());
-                    
-                    // 添加 zIndex（如果 ElementStyle 有這個欄位，否則使用預設值）
-                    elementMap.put("zIndex", 1); // 預設值，如果 ElementStyle 有 zIndex 欄位可以從那裡獲取
-                    
-                    return elementMap;
-                })
-                .collect(java.util.stream.Collectors.toList());
-    }
 }
 
 
@@ -4,6 +4,8 @@ import org.example.dto.TemplateSummaryDto;
 import org.example.model.DoorplateLayout;
 import org.example.model.ElementStyle;
 import org.example.repository.DoorplateLayoutRepository;
+import org.example.service.cache.LookupCacheService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -16,8 +18,15 @@ public class DoorplateLayoutService {
 
     private final DoorplateLayoutRepository layoutRepository;
 
-    public DoorplateLayoutService(DoorplateLayoutRepository layoutRepository) {
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final LookupCacheService lookupCache;
+
+    public DoorplateLayoutService(DoorplateLayoutRepository layoutRepository, ApplicationEventPublisher eventPublisher,
+                                  LookupCacheService lookupCache) {
         this.layoutRepository = layoutRepository;
+        this.eventPublisher = eventPublisher;
+        this.lookupCache = lookupCache;
     }
 
     public boolean updateElementsByUserId(String userId, List<ElementStyle> newElements) {
@@ -25,6 +34,7 @@ public class DoorplateLayoutService {
             layout.setElements(newElements);
             layout.setUpdatedAt(Instant.now());
             layoutRepository.save(layout);
+            publishSaved(layout);
             return true;
         }).orElse(false);
     }
@@ -34,6 +44,7 @@ public class DoorplateLayoutService {
             layout.setElements(newElements);
             layout.setUpdatedAt(Instant.now());
             layoutRepository.save(layout);
+            publishSaved(layout);
             return true;
         }).orElse(false);
     }
@@ -53,7 +64,7 @@ public class DoorplateLayoutService {
                 .map(existingLayout -> {
                     existingLayout.setElements(elements);
                     existingLayout.setUpdatedAt(Instant.now());
-                    return layoutRepository.save(existingLayout);
+                    return publishSaved(layoutRepository.save(existingLayout));
                 })
                 .orElseGet(() -> {
                     DoorplateLayout newLayout = new DoorplateLayout();
@@ -73,7 +84,9 @@ public class DoorplateLayoutService {
     }
 
     public void deleteLayout(String userId, String layoutName) {
+        Optional<DoorplateLayout> existing = layoutRepository.findByUserIdAndLayoutName(userId, layoutName);
         layoutRepository.deleteByUserIdAndLayoutName(userId, layoutName);
+        existing.ifPresent(layout -> lookupCache.invalidateLayout(layout.getId()));
         System.out.println("Layout 已刪除");
     }
 
@@ -86,9 +99,25 @@ public class DoorplateLayoutService {
         return layoutRepository.findById(layoutId);
     }
 
+    /**
+     * 渲染用的佈局讀取（經由查詢快取，返回的佈局為共用實例，只能讀取）
+     */
+    public Optional<DoorplateLayout> findLayoutForRender(String layoutId) {
+        return lookupCache.findLayout(layoutId, layoutRepository::findById);
+    }
+
     public DoorplateLayout saveLayout(DoorplateLayout layout) {
         layout.setUpdatedAt(Instant.now());
-        return layoutRepository.save(layout);
+        return publishSaved(layoutRepository.save(layout));
+    }
+
+    /**
+     * 通知佈局已保存（先移除查詢快取中的舊佈局，使用該模板的設備會在背景重新預渲染）
+     */
+    private DoorplateLayout publishSaved(DoorplateLayout layout) {
+        lookupCache.invalidateLayout(layout.getId());
+        eventPublisher.publishEvent(new LayoutSavedEvent(layout.getId()));
+        return layout;
     }
 
 
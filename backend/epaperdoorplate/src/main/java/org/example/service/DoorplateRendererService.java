@@ -1,11 +1,26 @@
 package org.example.service;
 
+import jakarta.annotation.PreDestroy;
+import org.example.model.DisplayProfile;
+import org.example.service.render.AssetResolver;
+import org.example.service.render.FrameBuffer;
+import org.example.service.render.FrameEncoder;
+import org.example.service.render.FramePacker;
+import org.example.service.render.JavaDoorplateRenderer;
+import org.example.service.render.PythonRenderWorkerPool;
+import org.example.service.render.RenderCache;
+import org.example.service.render.RenderKeys;
+import org.example.service.render.RenderMode;
+import org.example.service.render.RenderPriority;
+import org.example.service.render.RenderScheduler;
+import org.example.service.render.SingleFlight;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -25,6 +40,49 @@ public class DoorplateRendererService {
     @Value("${upload.folder:uploads}")
     private String uploadFolder;
     
+    // 渲染引擎：java（預設，進程內渲染）或 python（舊版子進程渲染）
+    @Value("${renderer.engine:java}")
+    private String rendererEngine;
+    
+    // Python worker 池配置（renderer.engine=python 時使用）
+    @Value("${renderer.python.pool-size:2}")
+    private int pythonPoolSize;
+    
+    @Value("${renderer.python.max-jobs-per-worker:200}")
+    private int pythonMaxJobsPerWorker;
+    
+    @Value("${renderer.python.job-timeout-seconds:60}")
+    private long pythonJobTimeoutSeconds;
+    
+    @Value("${renderer.python.health-check-interval-seconds:30}")
+    private long pythonHealthCheckIntervalSeconds;
+    
+    // Python 渲染規則版本（腳本輸出規則變更時需更新，使快取失效）
+    private static final String PYTHON_RENDERER_VERSION = "python-1";
+    
+    private final JavaDoorplateRenderer javaRenderer;
+    
+    private final RenderCache renderCache;
+    
+    private final RenderScheduler renderScheduler;
+    
+    private final AssetResolver assetResolver;
+    
+    // 相同內容的並發渲染只執行一次（key：內容雜湊 + 優先級 + 輸出內容）
+    private final SingleFlight<String, RenderResult> renderFlights = new SingleFlight<>();
+    
+    private PythonRenderWorkerPool pythonWorkerPool;
+    
+    private volatile String cachedFrontendUrl;
+    
+    public DoorplateRendererService(JavaDoorplateRenderer javaRenderer, RenderCache renderCache,
+                                    RenderScheduler renderScheduler, AssetResolver assetResolver) {
+        this.javaRenderer = javaRenderer;
+        this.renderCache = renderCache;
+        this.renderScheduler = renderScheduler;
+        this.assetResolver = assetResolver;
+    }
+    
     // Python 腳本現在與 JAR 文件在同一目錄（backend/epaperdoorplate/）
     private static final String PYTHON_SCRIPT_PATH = getPythonScriptPath();
     
@@ -91,23 +149,52 @@ public class DoorplateRendererService {
     }
     
     /**
-     * 渲染結果類，包含BMP和BIN數據
+     * 渲染結果類，包含位元平面幀緩衝與（預覽模式下的）BMP數據
+     * BIN 不另外保存，需要時由幀緩衝序列化（快取中每個結果少佔一份 96 KB）
      */
     public static class RenderResult {
         private final byte[] bmpData;
-        private final byte[] binData;
+        private final FrameBuffer frame;
+        private final DisplayProfile profile;
+        
+        public RenderResult(byte[] bmpData, FrameBuffer frame) {
+            this(bmpData, frame, DisplayProfile.defaultProfile());
+        }
         
-        public RenderResult(byte[] bmpData, byte[] binData) {
+        /**
+         * @param frame 面板尺寸（已旋轉）的幀緩衝
+         * @param profile 幀緩衝對應的面板規格（決定 BIN 的輸出格式）
+         */
+        public RenderResult(byte[] bmpData, FrameBuffer frame, DisplayProfile profile) {
             this.bmpData = bmpData;
-            this.binData = binData;
+            this.frame = frame;
+            this.profile = profile;
         }
         
+        /**
+         * BMP 數據，只生成位元平面的結果（RenderMode.BIN_ONLY）為 null
+         */
         public byte[] getBmpData() {
             return bmpData;
         }
         
+        public boolean hasPreview() {
+            return bmpData != null;
+        }
+        
+        public FrameBuffer getFrame() {
+            return frame;
+        }
+        
+        public DisplayProfile getProfile() {
+            return profile;
+        }
+        
+        /**
+         * 按面板規格序列化為 bitmap.bin（每次呼叫返回新的陣列）
+         */
         public byte[] getBinData() {
-            return binData;
+            return frame != null ? frame.toBin(profile) : null;
         }
     }
     
@@ -115,213 +202,269 @@ public class DoorplateRendererService {
      * 渲染門牌並返回數據（不保存文件）
      * @param elements 模板元素
      * @param layoutId 佈局ID
-     * @return 渲染結果（包含BMP和BIN數據）
+     * @param priority 渲染優先級（設備幀 > 激活碼畫面 > 編輯器預覽）
+     * @param mode 輸出內容，設備路徑只需要 BIN，使用 BIN_ONLY 跳過 BMP 編碼
+     * @return 渲染結果（包含幀緩衝，WITH_PREVIEW 時另含BMP數據）
+     * @throws org.example.service.render.RenderRejectedException 渲染隊列已滿或超過截止時間
+     */
+    public RenderResult renderDoorplate(List<Map<String, Object>> elements, String layoutId,
+                                        RenderPriority priority, RenderMode mode) {
+        return renderDoorplate(elements, layoutId, DisplayProfile.defaultProfile(), priority, mode);
+    }
+    
+    /**
+     * 按設備的面板規格渲染（畫布為規格的佈局尺寸，幀緩衝與 BIN 為面板尺寸與格式）
      */
-    public RenderResult renderDoorplate(List<Map<String, Object>> elements, String layoutId) {
-        File tempBmpFile = null;
-        File tempBinFile = null;
-        File tempJsonFile = null;
+    public RenderResult renderDoorplate(List<Map<String, Object>> elements, String layoutId, DisplayProfile profile,
+                                        RenderPriority priority, RenderMode mode) {
+        // 相同內容（元素、面板規格、渲染器版本）直接返回快取的渲染結果
+        // 快取中只有位元平面而本次需要 BMP 時重新渲染，結果會取代原快取項
+        String contentHash = contentHash(elements, profile);
+        RenderResult cached = renderCache.get(contentHash);
+        if (cached != null && (mode == RenderMode.BIN_ONLY || cached.hasPreview())) {
+            System.out.println("⚡ 渲染快取命中，layoutId: " + layoutId + "，contentHash: " + contentHash.substring(0, 12));
+            return cached;
+        }
         
+        // 相同內容正在渲染時等待其結果，不重複渲染；失敗或超時會傳給所有等待者
+        // 按內容合併（不分優先級），需要 BMP 的渲染不能共用只有位元平面的結果，兩者分開合併
+        // 較高優先級的呼叫方加入時提高排隊中任務的優先級與截止時間，設備幀不會跟著預覽排隊或被擠出
+        String flightKey = contentHash + "|" + (mode == RenderMode.WITH_PREVIEW ? "bmp" : "bin");
+        return renderFlights.execute(flightKey, () -> new RenderScheduler.Ticket(priority), ticket -> {
+            // 上一個相同的渲染可能剛完成（檢查快取之後、進入合併之前）
+            RenderResult latest = renderCache.get(contentHash);
+            if (latest != null && (mode == RenderMode.BIN_ONLY || latest.hasPreview())) {
+                return latest;
+            }
+            // 所有渲染經由調度器執行，限制同時渲染數量並按優先級排隊
+            RenderResult result = renderScheduler.execute(ticket, () -> "python".equalsIgnoreCase(rendererEngine)
+                    ? renderWithPython(elements, layoutId, profile)
+                    : renderWithJava(elements, layoutId, profile, mode));
+            renderCache.put(contentHash, result);
+            return result;
+        }, ticket -> renderScheduler.raise(ticket, priority));
+    }
+    
+    /**
+     * 批次渲染中的單台設備幀（BIN_ONLY，按設備的面板規格）
+     * 以最低優先級經由調度器渲染，只使用設備幀、激活碼畫面與預覽留下的空閒 worker
+     */
+    public RenderResult renderForBatch(List<Map<String, Object>> elements, String layoutId, DisplayProfile profile) {
+        return renderDoorplate(elements, layoutId, profile, RenderPriority.BATCH, RenderMode.BIN_ONLY);
+    }
+    
+    /**
+     * 計算元素列表在目前渲染器下的內容雜湊（與渲染快取使用相同的 key）
+     */
+    public String contentHash(List<Map<String, Object>> elements) {
+        return contentHash(elements, DisplayProfile.defaultProfile());
+    }
+    
+    /**
+     * 計算元素列表在指定面板規格下的內容雜湊
+     */
+    public String contentHash(List<Map<String, Object>> elements, DisplayProfile profile) {
+        return RenderKeys.contentHash(elements, profile.logicalWidth(), profile.logicalHeight(),
+                rendererVersion() + "|" + profile.cacheKey());
+    }
+    
+    /**
+     * 渲染快取統計
+     */
+    public Map<String, Object> getRenderCacheStats() {
+        Map<String, Object> stats = renderCache.getStats();
+        stats.put("glyphs", javaRenderer.getGlyphCacheStats());
+        stats.put("images", javaRenderer.getImageCacheStats());
+        stats.put("staticLayers", javaRenderer.getStaticLayerCacheStats());
+        stats.put("codeMatrices", javaRenderer.getCodeMatrixCacheStats());
+        return stats;
+    }
+    
+    /**
+     * 渲染調度器統計
+     */
+    public Map<String, Object> getRenderSchedulerStats() {
+        Map<String, Object> stats = renderScheduler.getStats();
+        stats.put("inFlight", renderFlights.getInFlightCount());
+        stats.put("coalesced", renderFlights.getCoalescedCount());
+        return stats;
+    }
+    
+    /**
+     * 渲染器版本（包含引擎、渲染規則版本與影響輸出的配置）
+     * 已保存的設備幀記錄渲染時的版本，版本不同時重新渲染
+     */
+    public String rendererVersion() {
+        String engineVersion = "python".equalsIgnoreCase(rendererEngine)
+                ? PYTHON_RENDERER_VERSION
+                : JavaDoorplateRenderer.VERSION;
+        return engineVersion + "|" + resolveFrontendUrl();
+    }
+    
+    /**
+     * 使用進程內 Java 引擎渲染（全部在記憶體中生成，BIN_ONLY 時不編碼 BMP）
+     */
+    private RenderResult renderWithJava(List<Map<String, Object>> elements, String layoutId,
+                                        DisplayProfile profile, RenderMode mode) {
         try {
-            System.out.println("開始渲染門牌，layoutId: " + layoutId);
-            System.out.println("Python腳本路徑: " + PYTHON_SCRIPT_PATH);
+            long start = System.currentTimeMillis();
+            BufferedImage canvas = javaRenderer.render(elements, profile.logicalWidth(), profile.logicalHeight(),
+                    resolveFrontendUrl(), resolveUploadsDir());
+            byte[] bmpData = mode == RenderMode.WITH_PREVIEW ? FrameEncoder.toBmp(canvas) : null;
+            FrameBuffer frame = FramePacker.packFrame(canvas, profile, false);
+            System.out.println("✅ Java 渲染完成，layoutId: " + layoutId + "，耗時: " + (System.currentTimeMillis() - start) + " ms");
+            return new RenderResult(bmpData, frame, profile);
+        } catch (Exception e) {
+            throw new RuntimeException("渲染門牌失敗: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 使用常駐 Python worker 池渲染（備用引擎，腳本總是同時輸出 BMP 與 BIN）
+     */
+    private RenderResult renderWithPython(List<Map<String, Object>> elements, String layoutId, DisplayProfile profile) {
+        try {
+            System.out.println("開始渲染門牌（Python worker），layoutId: " + layoutId);
             System.out.println("📥 renderDoorplate 收到 " + elements.size() + " 個元素");
             
-            // 檢查是否有 guestQRCode 元素
-            for (Map<String, Object> element : elements) {
-                if ("guestQRCode".equals(element.get("type"))) {
-                    System.out.println("🔍 在 renderDoorplate 中找到 guestQRCode 元素");
-                    System.out.println("   元素 ID: " + element.get("id"));
-                    System.out.println("   元素所有鍵: " + element.keySet());
-                    System.out.println("   Token: " + element.get("guestQRCodeToken"));
-                }
-            }
-            
             // 檢查Python腳本是否存在
             File pythonScript = new File(PYTHON_SCRIPT_PATH);
             if (!pythonScript.exists()) {
                 throw new RuntimeException("Python腳本不存在: " + PYTHON_SCRIPT_PATH);
             }
             
-            // 創建臨時文件（使用系統臨時目錄）
-            String tempDir = System.getProperty("java.io.tmpdir");
-            String timestamp = String.valueOf(System.currentTimeMillis());
-            tempJsonFile = new File(tempDir, "temp_elements_" + timestamp + ".json");
-            tempBmpFile = new File(tempDir, "doorplate_" + layoutId + "_" + timestamp + ".bmp");
-            tempBinFile = new File(tempDir, "doorplate_" + layoutId + "_" + timestamp + ".bin");
-            
-            // 創建臨時JSON文件
-            createTempJsonFile(elements, tempJsonFile);
-            System.out.println("臨時JSON文件: " + tempJsonFile.getAbsolutePath());
+            long start = System.currentTimeMillis();
+            int width = profile.logicalWidth();
+            int height = profile.logicalHeight();
+            String requestJson = buildRenderRequestJson(elements, width, height);
+            PythonRenderWorkerPool.RenderOutput output = getPythonWorkerPool()
+                    .render(requestJson.getBytes(StandardCharsets.UTF_8));
             
-            // 執行Python腳本
-            ProcessBuilder processBuilder = new ProcessBuilder(
-                "python", PYTHON_SCRIPT_PATH, 
-                "--input", tempJsonFile.getAbsolutePath(),
-                "--output", tempBmpFile.getAbsolutePath(),
-                "--width", "800",
-                "--height", "480"
-            );
-            
-            // 設置環境變數，讓 Python 腳本知道前端 URL（Guest QR Code 指向前端頁面）
-            // 優先使用環境變數 FRONTEND_URL
-            String frontendUrl = System.getenv("FRONTEND_URL");
-            
-            if (frontendUrl == null || frontendUrl.isEmpty()) {
-                System.err.println("⚠️ 警告: FRONTEND_URL 環境變數未設置");
-                System.err.println("   Guest QR Code 需要指向前端頁面，請設置 FRONTEND_URL");
-                System.err.println("   例如: https://epaper-doorplate.vercel.app");
-                // 開發環境回退值
-                frontendUrl = "http://localhost:3000";
-            }
-            
-            // 設置環境變數（Guest QR Code 使用前端 URL）
-            processBuilder.environment().put("FRONTEND_URL", frontendUrl);
-            System.out.println("設置 FRONTEND_URL 環境變數: " + frontendUrl);
-            
-            // 同時設置 API_BASE_URL（用於圖片等資源，向後兼容）
-            String publicApiUrl = System.getenv("PUBLIC_API_URL");
-            if (publicApiUrl == null || publicApiUrl.isEmpty()) {
-                // 如果沒有設置 PUBLIC_API_URL，嘗試從 Railway 環境變數獲取
-                String railwayUrl = System.getenv("RAILWAY_PUBLIC_DOMAIN");
-                if (railwayUrl != null && !railwayUrl.isEmpty()) {
-                    if (!railwayUrl.startsWith("http://") && !railwayUrl.startsWith("https://")) {
-                        publicApiUrl = "https://" + railwayUrl;
-                    } else {
-                        publicApiUrl = railwayUrl;
-                    }
-                } else {
-                    String protocol = "true".equalsIgnoreCase(sslEnabled) ? "https" : "http";
-                    if ("0.0.0.0".equals(serverAddress)) {
-                        publicApiUrl = protocol + "://localhost:" + serverPort;
-                    } else {
-                        publicApiUrl = protocol + "://" + serverAddress + ":" + serverPort;
-                    }
-                }
-            }
-            processBuilder.environment().put("API_BASE_URL", publicApiUrl);
-            System.out.println("設置 API_BASE_URL 環境變數（用於圖片資源）: " + publicApiUrl);
-            
-            // 設置 uploads 目錄路徑（絕對路徑）
-            String backendPath = getBackendPath();
-            File uploadsDir = new File(backendPath, "epaperdoorplate" + File.separator + uploadFolder);
-            // 如果不存在，嘗試相對路徑
-            if (!uploadsDir.exists()) {
-                uploadsDir = new File(uploadFolder);
-            }
-            // 如果還是不存在，嘗試從當前工作目錄
-            if (!uploadsDir.exists()) {
-                String currentDir = System.getProperty("user.dir");
-                uploadsDir = new File(currentDir, uploadFolder);
-            }
-            
-            String uploadsDirPath = uploadsDir.getAbsolutePath();
-            processBuilder.environment().put("UPLOADS_DIR", uploadsDirPath);
-            System.out.println("設置 UPLOADS_DIR 環境變數: " + uploadsDirPath);
-            System.out.println("uploads 目錄是否存在: " + uploadsDir.exists());
-            
-            // 設置工作目錄為當前目錄（JAR 文件所在目錄，Python 腳本也在這裡）
-            processBuilder.directory(new File(System.getProperty("user.dir")));
-            System.out.println("執行命令: " + String.join(" ", processBuilder.command()));
-            Process process = processBuilder.start();
-            
-            // 啟動線程讀取實時輸出
-            Thread outputReader = new Thread(() -> {
-                try {
-                    java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(process.getInputStream()));
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println("Python輸出: " + line);
-                    }
-                } catch (Exception e) {
-                    System.out.println("讀取Python輸出時出錯: " + e.getMessage());
-                }
-            });
-            outputReader.start();
-            
-            // 啟動線程讀取錯誤輸出
-            Thread errorReader = new Thread(() -> {
-                try {
-                    java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(process.getErrorStream()));
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println("Python錯誤: " + line);
-                    }
-                } catch (Exception e) {
-                    System.out.println("讀取Python錯誤輸出時出錯: " + e.getMessage());
-                }
-            });
-            errorReader.start();
-            
-            // 等待執行完成
-            System.out.println("等待Python腳本執行完成...");
-            boolean finished = process.waitFor(60, TimeUnit.SECONDS);
-            
-            if (!finished) {
-                System.out.println("Python腳本執行超時，強制終止");
-                process.destroyForcibly();
-                throw new RuntimeException("Python腳本執行超時");
-            }
-            
-            int exitCode = process.exitValue();
-            System.out.println("Python腳本退出碼: " + exitCode);
-            
-            if (exitCode != 0) {
-                String errorOutput = new String(process.getErrorStream().readAllBytes());
-                String standardOutput = new String(process.getInputStream().readAllBytes());
-                System.out.println("Python錯誤輸出: " + errorOutput);
-                System.out.println("Python標準輸出: " + standardOutput);
-                throw new RuntimeException("Python腳本執行失敗 (退出碼: " + exitCode + "): " + errorOutput);
-            }
-            
-            // 讀取BMP文件數據
-            if (!tempBmpFile.exists()) {
-                throw new RuntimeException("BMP文件不存在: " + tempBmpFile.getAbsolutePath());
-            }
-            byte[] bmpData = Files.readAllBytes(tempBmpFile.toPath());
-            System.out.println("BMP文件讀取成功，大小: " + bmpData.length + " bytes");
-            
-            // 讀取BIN文件數據
-            byte[] binData = null;
-            if (tempBinFile.exists()) {
-                binData = Files.readAllBytes(tempBinFile.toPath());
-                System.out.println("BIN文件讀取成功，大小: " + binData.length + " bytes");
+            System.out.println("✅ Python 渲染完成，耗時: " + (System.currentTimeMillis() - start) + " ms");
+            System.out.println("   BMP 大小: " + output.getBmpData().length + " bytes");
+            if (output.getBinData() != null) {
+                System.out.println("   BIN 大小: " + output.getBinData().length + " bytes");
             } else {
-                System.out.println("警告: BIN文件不存在: " + tempBinFile.getAbsolutePath());
+                System.out.println("警告: BIN 數據未生成");
             }
             
-            return new RenderResult(bmpData, binData);
+            // 腳本輸出佈局尺寸的預設格式，再按面板規格旋轉、合併平面
+            FrameBuffer frame = output.getBinData() != null
+                    ? FramePacker.adapt(FrameBuffer.fromBin(output.getBinData(), width, height), profile)
+                    : null;
+            return new RenderResult(output.getBmpData(), frame, profile);
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("渲染門牌被中斷", e);
         } catch (Exception e) {
             throw new RuntimeException("渲染門牌失敗: " + e.getMessage(), e);
-        } finally {
-            // 清理所有臨時文件
-            try {
-                if (tempJsonFile != null && tempJsonFile.exists()) {
-                    Files.deleteIfExists(tempJsonFile.toPath());
-                    System.out.println("臨時JSON文件已刪除: " + tempJsonFile.getName());
-                }
-                if (tempBmpFile != null && tempBmpFile.exists()) {
-                    Files.deleteIfExists(tempBmpFile.toPath());
-                    System.out.println("臨時BMP文件已刪除: " + tempBmpFile.getName());
+        }
+    }
+    
+    /**
+     * 取得（必要時建立）Python worker 池，環境變數在 worker 啟動時設置
+     */
+    private synchronized PythonRenderWorkerPool getPythonWorkerPool() {
+        if (pythonWorkerPool == null) {
+            Map<String, String> environment = new HashMap<>();
+            environment.put("FRONTEND_URL", resolveFrontendUrl());
+            environment.put("API_BASE_URL", resolveApiBaseUrl());
+            environment.put("UPLOADS_DIR", resolveUploadsDir().getAbsolutePath());
+            environment.put("PYTHONUNBUFFERED", "1");
+            System.out.println("Python worker 環境變數: " + environment);
+            
+            pythonWorkerPool = new PythonRenderWorkerPool(
+                    List.of("python", PYTHON_SCRIPT_PATH, "--worker"),
+                    environment,
+                    new File(System.getProperty("user.dir")),
+                    pythonPoolSize,
+                    pythonMaxJobsPerWorker,
+                    TimeUnit.SECONDS.toMillis(pythonJobTimeoutSeconds),
+                    TimeUnit.SECONDS.toMillis(pythonHealthCheckIntervalSeconds));
+        }
+        return pythonWorkerPool;
+    }
+    
+    @PreDestroy
+    public synchronized void shutdownPythonWorkers() {
+        if (pythonWorkerPool != null) {
+            pythonWorkerPool.shutdown();
+            pythonWorkerPool = null;
+        }
+    }
+    
+    /**
+     * 前端 URL（Guest QR Code 指向前端頁面），優先使用環境變數 FRONTEND_URL
+     */
+    private String resolveFrontendUrl() {
+        // 環境變數在運行期間不會變化，只解析（並警告）一次
+        if (cachedFrontendUrl != null) {
+            return cachedFrontendUrl;
+        }
+        String frontendUrl = System.getenv("FRONTEND_URL");
+        if (frontendUrl == null || frontendUrl.isEmpty()) {
+            System.err.println("⚠️ 警告: FRONTEND_URL 環境變數未設置");
+            System.err.println("   Guest QR Code 需要指向前端頁面，請設置 FRONTEND_URL");
+            System.err.println("   例如: https://epaper-doorplate.vercel.app");
+            // 開發環境回退值
+            frontendUrl = "http://localhost:3000";
+        }
+        cachedFrontendUrl = frontendUrl;
+        return frontendUrl;
+    }
+    
+    /**
+     * 後端公開 URL（Python 腳本下載圖片資源時使用）
+     */
+    private String resolveApiBaseUrl() {
+        String publicApiUrl = System.getenv("PUBLIC_API_URL");
+        if (publicApiUrl == null || publicApiUrl.isEmpty()) {
+            // 如果沒有設置 PUBLIC_API_URL，嘗試從 Railway 環境變數獲取
+            String railwayUrl = System.getenv("RAILWAY_PUBLIC_DOMAIN");
+            if (railwayUrl != null && !railwayUrl.isEmpty()) {
+                if (!railwayUrl.startsWith("http://") && !railwayUrl.startsWith("https://")) {
+                    publicApiUrl = "https://" + railwayUrl;
+                } else {
+                    publicApiUrl = railwayUrl;
                 }
-                if (tempBinFile != null && tempBinFile.exists()) {
-                    Files.deleteIfExists(tempBinFile.toPath());
-                    System.out.println("臨時BIN文件已刪除: " + tempBinFile.getName());
+            } else {
+                String protocol = "true".equalsIgnoreCase(sslEnabled) ? "https" : "http";
+                if ("0.0.0.0".equals(serverAddress)) {
+                    publicApiUrl = protocol + "://localhost:" + serverPort;
+                } else {
+                    publicApiUrl = protocol + "://" + serverAddress + ":" + serverPort;
                 }
-            } catch (IOException e) {
-                System.out.println("清理臨時文件時出錯: " + e.getMessage());
             }
         }
+        return publicApiUrl;
+    }
+    
+    /**
+     * uploads 目錄（絕對路徑）
+     */
+    private File resolveUploadsDir() {
+        String backendPath = getBackendPath();
+        File uploadsDir = new File(backendPath, "epaperdoorplate" + File.separator + uploadFolder);
+        // 如果不存在，嘗試相對路徑
+        if (!uploadsDir.exists()) {
+            uploadsDir = new File(uploadFolder);
+        }
+        // 如果還是不存在，嘗試從當前工作目錄
+        if (!uploadsDir.exists()) {
+            String currentDir = System.getProperty("user.dir");
+            uploadsDir = new File(currentDir, uploadFolder);
+        }
+        return uploadsDir.getAbsoluteFile();
     }
     
     
-    private void createTempJsonFile(List<Map<String, Object>> elements, File outputFile) throws IOException {
-        // 創建包含元素數據的JSON文件
+    private String buildRenderRequestJson(List<Map<String, Object>> elements, int width, int height) {
+        // 創建包含畫布尺寸與元素數據的渲染請求
         StringBuilder json = new StringBuilder();
         json.append("{\n");
+        json.append("  \"width\": ").append(width).append(",\n");
+        json.append("  \"height\": ").append(height).append(",\n");
         json.append("  \"elements\": [\n");
         
         for (int i = 0; i < elements.size(); i++) {
@@ -362,6 +505,13 @@ public class DoorplateRendererService {
                 String contentStr = (content == null) ? "" : content.toString();
                 String imageIdStr = (imageId == null) ? "" : imageId.toString();
                 
+                // 本地 uploads 目錄沒有的上傳圖片（例如 S3 存儲）先讀出來以 data URI 傳給腳本，
+                // 腳本不必再回呼 /images/**（每張圖一次 HTTP 請求與資料庫查找）
+                String inlined = inlineUploadedImage(imageUrlStr, contentStr, imageIdStr);
+                if (inlined != null) {
+                    imageUrlStr = inlined;
+                }
+                
                 json.append("      ,\"imageUrl\": \"").append(escapeJsonString(imageUrlStr)).append("\"\n");
                 json.append("      ,\"content\": \"").append(escapeJsonString(contentStr)).append("\"\n");
                 if (!imageIdStr.isEmpty()) {
@@ -400,8 +550,36 @@ public class DoorplateRendererService {
         json.append("  ]\n");
         json.append("}\n");
         
-        // 寫入臨時文件
-        Files.write(outputFile.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+        return json.toString();
+    }
+    
+    /**
+     * 按腳本相同的優先順序（imageUrl > content > imageId）取得圖片路徑，
+     * 是上傳圖片且本地不存在時返回 data URI，否則返回 null（保持原路徑）
+     */
+    private String inlineUploadedImage(String imageUrl, String content, String imageId) {
+        String imagePath;
+        if (!imageUrl.trim().isEmpty() && !"null".equals(imageUrl.trim())) {
+            imagePath = imageUrl.trim();
+        } else if (!content.trim().isEmpty() && !"null".equals(content.trim())) {
+            imagePath = content.trim();
+        } else if (!imageId.trim().isEmpty() && !"null".equals(imageId.trim())) {
+            imagePath = "/images/" + imageId.trim();
+        } else {
+            return null;
+        }
+        if (imagePath.startsWith("data:") || imagePath.startsWith("http")) {
+            return null;
+        }
+        if (new File(resolveUploadsDir(), AssetResolver.fileName(imagePath)).isFile()) {
+            return null;
+        }
+        try {
+            return assetResolver.readImageAsDataUri(imagePath);
+        } catch (IOException e) {
+            System.out.println("⚠️ 無法預先讀取圖片 " + imagePath + "，交由腳本處理: " + e.getMessage());
+            return null;
+        }
     }
     
     private String escapeJsonString(String str) {
@@ -0,0 +1,17 @@
+package org.example.service;
+
+/**
+ * 佈局保存事件（由 DoorplateLayoutService 發布，觸發使用該模板的設備重新預渲染）
+ */
+public class LayoutSavedEvent {
+
+    private final String layoutId;
+
+    public LayoutSavedEvent(String layoutId) {
+        this.layoutId = layoutId;
+    }
+
+    public String getLayoutId() {
+        return layoutId;
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.service.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 讀穿式查詢快取（按條目數量限制容量，超出上限時按 LRU 淘汰）
+ * - 未命中時以呼叫方提供的 loader 讀取資料庫並放入快取；不存在的結果不快取
+ * - 每次失效遞增世代號：載入期間發生失效時，載入的結果不放入快取（避免把舊資料放回）
+ * - 條目超過存活時間後視為未命中（跨節點失效未啟用時，多節點部署的資料最多延遲這段時間）
+ * @param <V> 快取的值；copier 不為 null 時每次返回副本，否則返回共用實例（只能讀取）
+ */
+public class LookupCache<V> {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final UnaryOperator<V> copier;
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public LookupCache(int maxEntries, long ttlSeconds, UnaryOperator<V> copier) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.copier = copier;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0 && ttlMillis > 0;
+    }
+
+    public Optional<V> get(String key, Function<String, Optional<V>> loader) {
+        if (!isEnabled() || key == null) {
+            return loader.apply(key);
+        }
+        long loadGeneration;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt < ttlMillis) {
+                hits.incrementAndGet();
+                return Optional.of(copy(entry.value));
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+            loadGeneration = generation;
+        }
+        misses.incrementAndGet();
+
+        // 讀取資料庫在鎖外進行，並發的未命中可能重複讀取，結果相同
+        Optional<V> loaded = loader.apply(key);
+        if (loaded.isEmpty()) {
+            return loaded;
+        }
+        V value = loaded.get();
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry<>(copy(value), System.currentTimeMillis()));
+                Iterator<Map.Entry<String, Entry<V>>> it = entries.entrySet().iterator();
+                while (entries.size() > maxEntries && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        return Optional.of(value);
+    }
+
+    public synchronized void invalidate(String key) {
+        generation++;
+        if (entries.remove(key) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * 移除所有符合條件的條目
+     */
+    public synchronized void invalidateIf(Predicate<V> predicate) {
+        generation++;
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (predicate.test(it.next().value)) {
+                it.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * 快取統計（命中率、容量等）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return stats;
+    }
+
+    private V copy(V value) {
+        return copier != null ? copier.apply(value) : value;
+    }
+
+    private record Entry<V>(V value, long loadedAt) {
+    }
+}
@@ -0,0 +1,226 @@
+package org.example.service.cache;
+
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.example.model.Device;
+import org.example.model.DisplayProfile;
+import org.example.model.DoorplateLayout;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 設備與佈局的查詢快取（/device/status 輪詢路徑每次都需要設備及其模板）
+ * - 設備：以 deviceId 為 key，每次返回副本（呼叫方會修改 updatedAt 等欄位）
+ * - 佈局：以佈局 ID 為 key，返回共用實例（只能讀取，修改佈局需經由 DoorplateLayoutService 重新讀取資料庫）
+ * - 所有寫入路徑在寫入資料庫後呼叫 invalidate*；啟用跨節點失效時，同時寫入 cache_invalidations 集合，
+ *   其他節點定期讀取並移除對應的條目
+ */
+@Service
+public class LookupCacheService {
+
+    private static final String INVALIDATION_COLLECTION = "cache_invalidations";
+
+    private static final String KIND_DEVICE = "device";
+    private static final String KIND_TEMPLATE_DEVICES = "templateDevices";
+    private static final String KIND_LAYOUT = "layout";
+
+    // 已處理的失效記錄 ID 保留數量（輪詢時回看一段時間，避免重複處理）
+    private static final int SEEN_LIMIT = 10000;
+
+    private final MongoTemplate mongoTemplate;
+    private final LookupCache<Device> devices;
+    private final LookupCache<DoorplateLayout> layouts;
+
+    private final boolean crossNodeEnabled;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final long lookbackMillis;
+    private final ScheduledExecutorService poller;
+    private final LinkedHashMap<ObjectId, Boolean> seenInvalidations = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ObjectId, Boolean> eldest) {
+            return size() > SEEN_LIMIT;
+        }
+    };
+
+    public LookupCacheService(MongoTemplate mongoTemplate,
+                              @Value("${lookup-cache.device.max-entries:10000}") int deviceMaxEntries,
+                              @Value("${lookup-cache.device.ttl-seconds:60}") long deviceTtlSeconds,
+                              @Value("${lookup-cache.layout.max-entries:500}") int layoutMaxEntries,
+                              @Value("${lookup-cache.layout.ttl-seconds:600}") long layoutTtlSeconds,
+                              @Value("${lookup-cache.cross-node.enabled:false}") boolean crossNodeEnabled,
+                              @Value("${lookup-cache.cross-node.poll-interval-ms:1000}") long pollIntervalMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.devices = new LookupCache<>(deviceMaxEntries, deviceTtlSeconds, LookupCacheService::copyDevice);
+        this.layouts = new LookupCache<>(layoutMaxEntries, layoutTtlSeconds, null);
+        this.crossNodeEnabled = crossNodeEnabled;
+
+        long interval = Math.max(100, pollIntervalMs);
+        // 回看一段時間，容許各節點時鐘的少量誤差及寫入延遲
+        this.lookbackMillis = Math.max(5000, interval * 3);
+        if (crossNodeEnabled) {
+            ensureInvalidationIndex();
+            this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "lookup-cache-invalidation");
+                t.setDaemon(true);
+                return t;
+            });
+            this.poller.scheduleWithFixedDelay(this::pollSafely, interval, interval, TimeUnit.MILLISECONDS);
+            System.out.println("✅ 查詢快取已啟用跨節點失效，節點 ID: " + nodeId);
+        } else {
+            this.poller = null;
+        }
+    }
+
+    /**
+     * @return 設備的副本（可修改，不影響快取）
+     */
+    public Optional<Device> findDevice(String deviceId, Function<String, Optional<Device>> loader) {
+        return devices.get(deviceId, loader);
+    }
+
+    /**
+     * @return 佈局的共用實例（只能讀取）
+     */
+    public Optional<DoorplateLayout> findLayout(String layoutId, Function<String, Optional<DoorplateLayout>> loader) {
+        return layouts.get(layoutId, loader);
+    }
+
+    public void invalidateDevice(String deviceId) {
+        if (deviceId == null) {
+            return;
+        }
+        devices.invalidate(deviceId);
+        broadcast(KIND_DEVICE, deviceId);
+    }
+
+    /**
+     * 移除所有使用該模板的設備（模板內容變更時一次遞增多台設備的內容版本）
+     */
+    public void invalidateDevicesOfTemplate(String templateId) {
+        if (templateId == null) {
+            return;
+        }
+        devices.invalidateIf(device -> templateId.equals(device.getCurrentTemplateId()));
+        broadcast(KIND_TEMPLATE_DEVICES, templateId);
+    }
+
+    public void invalidateLayout(String layoutId) {
+        if (layoutId == null) {
+            return;
+        }
+        layouts.invalidate(layoutId);
+        broadcast(KIND_LAYOUT, layoutId);
+    }
+
+    /**
+     * 快取統計（設備、佈局各自的命中率與條目數）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("devices", devices.getStats());
+        stats.put("layouts", layouts.getStats());
+        stats.put("crossNodeEnabled", crossNodeEnabled);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    private static Device copyDevice(Device source) {
+        Device copy = new Device();
+        BeanUtils.copyProperties(source, copy);
+        if (source.getDisplayProfile() != null) {
+            DisplayProfile profile = new DisplayProfile();
+            BeanUtils.copyProperties(source.getDisplayProfile(), profile);
+            copy.setDisplayProfile(profile);
+        }
+        return copy;
+    }
+
+    private void broadcast(String kind, String key) {
+        if (!crossNodeEnabled) {
+            return;
+        }
+        try {
+            Document doc = new Document("kind", kind)
+                    .append("key", key)
+                    .append("node", nodeId)
+                    .append("at", new Date());
+            mongoTemplate.getCollection(INVALIDATION_COLLECTION).insertOne(doc);
+        } catch (Exception e) {
+            // 其他節點的條目會在存活時間到期後自然失效
+            System.err.println("❌ 寫入跨節點快取失效記錄失敗，kind: " + kind + "，key: " + key + "，錯誤: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 讀取其他節點最近的失效記錄並移除對應的條目
+     * @return 處理的記錄數
+     */
+    private int pollInvalidations() {
+        Query query = Query.query(Criteria.where("at").gte(new Date(System.currentTimeMillis() - lookbackMillis))
+                        .and("node").ne(nodeId))
+                .with(Sort.by(Sort.Direction.ASC, "at"));
+        int processed = 0;
+        for (Document doc : mongoTemplate.find(query, Document.class, INVALIDATION_COLLECTION)) {
+            ObjectId id = doc.getObjectId("_id");
+            if (id == null || seenInvalidations.put(id, Boolean.TRUE) != null) {
+                continue;
+            }
+            String key = doc.getString("key");
+            switch (Objects.toString(doc.getString("kind"), "")) {
+                case KIND_DEVICE -> devices.invalidate(key);
+                case KIND_TEMPLATE_DEVICES -> devices.invalidateIf(device -> Objects.equals(key, device.getCurrentTemplateId()));
+                case KIND_LAYOUT -> layouts.invalidate(key);
+                default -> {
+                    continue;
+                }
+            }
+            processed++;
+        }
+        return processed;
+    }
+
+    private void pollSafely() {
+        try {
+            pollInvalidations();
+        } catch (Exception e) {
+            System.err.println("❌ 讀取跨節點快取失效記錄失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 失效記錄只需保留到所有節點讀取完畢，以 TTL 索引自動刪除
+     */
+    private void ensureInvalidationIndex() {
+        try {
+            mongoTemplate.indexOps(INVALIDATION_COLLECTION)
+                    .ensureIndex(new Index().on("at", Sort.Direction.ASC).expire(Duration.ofHours(1)));
+        } catch (Exception e) {
+            System.err.println("⚠️ 建立 cache_invalidations TTL 索引失敗: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.service.render;
+
+import org.example.service.ImageService;
+import org.example.service.storage.StorageService;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * 渲染用圖片資源讀取
+ * 直接按上傳時的存儲路徑（images/<文件名>）向 StorageService 讀取，不經過 /images/** 回呼，
+ * 也不需要先查資料庫、再做存在檢查；只有舊數據的路徑不符合時才回退到 ImageService 的資料庫查找
+ */
+@Component
+public class AssetResolver {
+
+    private final StorageService storageService;
+    private final ImageService imageService;
+
+    public AssetResolver(StorageService storageService, ImageService imageService) {
+        this.storageService = storageService;
+        this.imageService = imageService;
+    }
+
+    /**
+     * 讀取上傳的圖片
+     * @param imagePath /images/xxx.webp、images/xxx.webp 或 xxx.webp
+     * @throws IOException 存儲中找不到圖片
+     */
+    public byte[] readImage(String imagePath) throws IOException {
+        String fileName = fileName(imagePath);
+        // LocalStorageService 與 S3StorageService 都接受 images/<文件名>
+        try (InputStream in = storageService.getFileInputStream("images/" + fileName)) {
+            return in.readAllBytes();
+        } catch (Exception e) {
+            // 回退：按資料庫中記錄的實際路徑讀取
+        }
+        try (InputStream in = imageService.getImageInputStream(fileName)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 讀取上傳的圖片並轉為 data URI（交給 Python 渲染器，避免其回呼 /images/**）
+     */
+    public String readImageAsDataUri(String imagePath) throws IOException {
+        byte[] data = readImage(imagePath);
+        String contentType = imageService.getImageContentType(fileName(imagePath));
+        return "data:" + contentType + ";base64," + Base64.getEncoder().encodeToString(data);
+    }
+
+    /**
+     * 去掉 /images/ 或 images/ 前綴
+     */
+    public static String fileName(String imagePath) {
+        if (imagePath.startsWith("/images/")) {
+            return imagePath.substring(8);
+        }
+        if (imagePath.startsWith("images/")) {
+            return imagePath.substring(7);
+        }
+        return imagePath;
+    }
+}
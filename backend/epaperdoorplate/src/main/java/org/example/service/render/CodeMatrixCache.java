@@ -0,0 +1,179 @@
+package org.example.service.render;
+
+import com.google.zxing.common.BitMatrix;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 條碼模組矩陣快取（以內容、糾錯等級、留白與目標尺寸為 key）
+ * 保存已縮放到元素尺寸的 1 位元點陣，命中時直接寫入畫布，不需重新做 Reed-Solomon 編碼與縮放
+ * - 按點陣位元組數計算容量，超出上限時按 LRU 淘汰
+ */
+@Component
+public class CodeMatrixCache {
+
+    // 每個點陣的固定開銷估算（key、物件頭等）
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Bitmap> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CodeMatrixCache(@Value("${renderer.code-cache.max-size-mb:8}") long maxSizeMb) {
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    /**
+     * 組成快取 key
+     */
+    public static String key(String content, String errorCorrection, int margin, int width, int height) {
+        return errorCorrection + "|" + margin + "|" + width + "x" + height + "|" + content;
+    }
+
+    /**
+     * @return 未命中時返回 null
+     */
+    public Bitmap get(String key) {
+        Bitmap bitmap;
+        synchronized (this) {
+            bitmap = entries.get(key);
+        }
+        if (bitmap != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    public void put(String key, Bitmap bitmap) {
+        long weight = bitmap.weight();
+        if (maxBytes <= 0 || weight > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            Bitmap previous = entries.put(key, bitmap);
+            if (previous != null) {
+                currentBytes -= previous.weight();
+            }
+            currentBytes += weight;
+
+            Iterator<Map.Entry<String, Bitmap>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Bitmap> eldest = it.next();
+                currentBytes -= eldest.getValue().weight();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * 快取統計（命中率、容量等）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("sizeBytes", currentBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return stats;
+    }
+
+    /**
+     * 已縮放的 1 位元點陣（每行 ceil(width / 64) 個 long，MSB 在前，1 為黑色）
+     */
+    public static final class Bitmap {
+        private final int width;
+        private final int height;
+        private final int wordsPerRow;
+        private final long[] bits;
+
+        private Bitmap(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.wordsPerRow = (width + 63) >>> 6;
+            this.bits = new long[wordsPerRow * height];
+        }
+
+        /**
+         * 將模組矩陣按 NEAREST 縮放到目標尺寸
+         * 與 Pillow 對 1 位元圖片的 resize 相同：先視為每模組 boxSize 像素的圖片，再按目標像素中心取樣
+         */
+        public static Bitmap scale(BitMatrix matrix, int boxSize, int width, int height) {
+            Bitmap bitmap = new Bitmap(width, height);
+            int srcWidth = matrix.getWidth() * boxSize;
+            int srcHeight = matrix.getHeight() * boxSize;
+            int[] moduleX = new int[width];
+            for (int dx = 0; dx < width; dx++) {
+                moduleX[dx] = Math.min((int) ((dx + 0.5) * srcWidth / width), srcWidth - 1) / boxSize;
+            }
+            for (int dy = 0; dy < height; dy++) {
+                int my = Math.min((int) ((dy + 0.5) * srcHeight / height), srcHeight - 1) / boxSize;
+                int base = dy * bitmap.wordsPerRow;
+                for (int dx = 0; dx < width; dx++) {
+                    if (matrix.get(moduleX[dx], my)) {
+                        bitmap.bits[base + (dx >>> 6)] |= 1L << (63 - (dx & 63));
+                    }
+                }
+            }
+            return bitmap;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * 以黑白像素覆蓋 TYPE_INT_RGB 畫布上 (x, y) 起的區域（超出畫布的部分裁掉），等同 drawImage 不透明的黑白圖片
+         */
+        public void drawTo(BufferedImage canvas, int x, int y) {
+            int canvasWidth = canvas.getWidth();
+            int canvasHeight = canvas.getHeight();
+            int[] pixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+            int x0 = Math.max(0, -x);
+            int y0 = Math.max(0, -y);
+            int x1 = Math.min(width, canvasWidth - x);
+            int y1 = Math.min(height, canvasHeight - y);
+            for (int row = y0; row < y1; row++) {
+                int base = row * wordsPerRow;
+                int canvasRow = (y + row) * canvasWidth + x;
+                for (int col = x0; col < x1; col++) {
+                    boolean black = (bits[base + (col >>> 6)] & (1L << (63 - (col & 63)))) != 0;
+                    pixels[canvasRow + col] = black ? 0x000000 : 0xFFFFFF;
+                }
+            }
+        }
+
+        long weight() {
+            return (long) bits.length * Long.BYTES + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
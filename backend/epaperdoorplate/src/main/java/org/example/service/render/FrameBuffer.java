@@ -0,0 +1,373 @@
+package org.example.service.render;
+
+import org.example.model.DisplayProfile;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 1 位元多平面幀緩衝（黑色層、紅色層）
+ * 每個平面以 long[] 按行存放，每行 ceil(width / 64) 個 long，像素 x 對應第 x / 64 個 long 的第 63 - x % 64 位
+ * （MSB 在前，與 bitmap.bin 的位元順序一致，序列化時按大端序輸出每行前 ceil(width / 8) 個 bytes）
+ * 800x480 的兩個平面共約 97 KB
+ * 輸出格式（平面數、位元順序、交錯塊大小）由 DisplayProfile 決定，預設與 bitmap.bin 相同
+ */
+public final class FrameBuffer {
+
+    private static final VarHandle LONG_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    public static final int BLACK = 0;
+    public static final int RED = 1;
+    public static final int PLANE_COUNT = 2;
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[][] planes;
+
+    public FrameBuffer(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("幀尺寸無效: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.planes = new long[PLANE_COUNT][wordsPerRow * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 平面的原始數據（供打包器直接寫入，每行 wordsPerRow 個 long）
+     */
+    long[] plane(int plane) {
+        return planes[plane];
+    }
+
+    int wordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * 兩個平面佔用的記憶體（bytes）
+     */
+    public long sizeBytes() {
+        return (long) PLANE_COUNT * planes[0].length * Long.BYTES;
+    }
+
+    public boolean get(int plane, int x, int y) {
+        return (planes[plane][y * wordsPerRow + (x >>> 6)] & bit(x)) != 0;
+    }
+
+    public void set(int plane, int x, int y, boolean on) {
+        int index = y * wordsPerRow + (x >>> 6);
+        if (on) {
+            planes[plane][index] |= bit(x);
+        } else {
+            planes[plane][index] &= ~bit(x);
+        }
+    }
+
+    /**
+     * 填充矩形（超出邊界的部分忽略）
+     */
+    public void fillRect(int plane, int x, int y, int w, int h, boolean on) {
+        int x0 = Math.max(0, x);
+        int y0 = Math.max(0, y);
+        int x1 = Math.min(width, x + w);
+        int y1 = Math.min(height, y + h);
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        long[] bits = planes[plane];
+        int firstWord = x0 >>> 6;
+        int lastWord = (x1 - 1) >>> 6;
+        for (int row = y0; row < y1; row++) {
+            int base = row * wordsPerRow;
+            for (int word = firstWord; word <= lastWord; word++) {
+                long mask = spanMask(word, x0, x1);
+                if (on) {
+                    bits[base + word] |= mask;
+                } else {
+                    bits[base + word] &= ~mask;
+                }
+            }
+        }
+    }
+
+    /**
+     * 將 src 的兩個平面整幅複製到 (dx, dy)，覆蓋目標區域（超出邊界的部分裁掉）
+     */
+    public void blit(FrameBuffer src, int dx, int dy) {
+        int x0 = Math.max(0, dx);
+        int y0 = Math.max(0, dy);
+        int x1 = Math.min(width, dx + src.width);
+        int y1 = Math.min(height, dy + src.height);
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            long[] target = planes[plane];
+            for (int row = y0; row < y1; row++) {
+                int base = row * wordsPerRow;
+                int srcRow = row - dy;
+                for (int word = x0 >>> 6; word <= (x1 - 1) >>> 6; word++) {
+                    long mask = spanMask(word, x0, x1);
+                    long value = src.readBits(plane, srcRow, (word << 6) - dx);
+                    target[base + word] = (target[base + word] & ~mask) | (value & mask);
+                }
+            }
+        }
+    }
+
+    /**
+     * 裁切出新的幀緩衝
+     */
+    public FrameBuffer crop(int x, int y, int w, int h) {
+        if (x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > width || y + h > height) {
+            throw new IllegalArgumentException("裁切範圍超出幀: " + x + "," + y + " " + w + "x" + h);
+        }
+        FrameBuffer result = new FrameBuffer(w, h);
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            long[] target = result.planes[plane];
+            for (int row = 0; row < h; row++) {
+                for (int word = 0; word < result.wordsPerRow; word++) {
+                    target[row * result.wordsPerRow + word] = readBits(plane, y + row, x + (word << 6))
+                            & result.spanMask(word, 0, w);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 逐位元 XOR，得到兩幀不同的像素（尺寸必須相同）
+     */
+    public FrameBuffer xorDiff(FrameBuffer other) {
+        requireSameSize(other);
+        FrameBuffer result = new FrameBuffer(width, height);
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            long[] a = planes[plane];
+            long[] b = other.planes[plane];
+            long[] target = result.planes[plane];
+            for (int i = 0; i < target.length; i++) {
+                target[i] = a[i] ^ b[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 平面中被設置的像素數
+     */
+    public long popcount(int plane) {
+        long count = 0;
+        for (long word : planes[plane]) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * 所有平面中被設置的像素總數（xorDiff 之後即為變更像素數）
+     */
+    public long popcount() {
+        long count = 0;
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            count += popcount(plane);
+        }
+        return count;
+    }
+
+    /**
+     * 旋轉後的新幀緩衝（順時針，90 / 270 度時寬高互換）
+     */
+    public FrameBuffer rotate(int degrees) {
+        if (degrees == 0) {
+            return this;
+        }
+        boolean swap = degrees == 90 || degrees == 270;
+        if (!swap && degrees != 180) {
+            throw new IllegalArgumentException("旋轉角度只能是 0 / 90 / 180 / 270: " + degrees);
+        }
+        FrameBuffer result = swap ? new FrameBuffer(height, width) : new FrameBuffer(width, height);
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (!get(plane, x, y)) {
+                        continue;
+                    }
+                    switch (degrees) {
+                        case 90 -> result.set(plane, height - 1 - y, x, true);
+                        case 180 -> result.set(plane, width - 1 - x, height - 1 - y, true);
+                        default -> result.set(plane, y, width - 1 - x, true);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 將紅色層併入黑色層（黑白面板上紅色內容顯示為黑色）
+     */
+    public FrameBuffer flattenToBlack() {
+        FrameBuffer result = new FrameBuffer(width, height);
+        long[] black = planes[BLACK];
+        long[] red = planes[RED];
+        long[] target = result.planes[BLACK];
+        for (int i = 0; i < target.length; i++) {
+            target[i] = black[i] | red[i];
+        }
+        return result;
+    }
+
+    /**
+     * 序列化為 bitmap.bin（黑色層、紅色層各自每行 ceil(width / 8) bytes，按 800 bytes 塊交錯）
+     */
+    public byte[] toBin() {
+        return FrameEncoder.interleave(planeBytes(BLACK, false), planeBytes(RED, false), FrameEncoder.INTERLEAVE_BLOCK_SIZE);
+    }
+
+    /**
+     * 按面板規格序列化（單平面時只輸出黑色層；交錯塊大小為 0 時平面依序輸出）
+     * 幀緩衝的尺寸需已是面板尺寸（旋轉在打包時完成）
+     */
+    public byte[] toBin(DisplayProfile profile) {
+        boolean lsbFirst = profile.lsbFirst();
+        byte[] black = planeBytes(BLACK, lsbFirst);
+        if (profile.getColorPlanes() == 1) {
+            return black;
+        }
+        int block = profile.getInterleaveBlockSize();
+        return FrameEncoder.interleave(black, planeBytes(RED, lsbFirst), block > 0 ? block : black.length);
+    }
+
+    /**
+     * 從 bitmap.bin 還原（例如 Python 渲染器的輸出）
+     */
+    public static FrameBuffer fromBin(byte[] bin, int width, int height) {
+        int bytesPerRow = (width + 7) >>> 3;
+        int planeLength = bytesPerRow * height;
+        if (bin.length != planeLength * 2) {
+            throw new IllegalArgumentException("bitmap.bin 長度 " + bin.length + " 與尺寸 " + width + "x" + height + " 不符");
+        }
+        byte[][] planeBytes = {new byte[planeLength], new byte[planeLength]};
+        int in = 0;
+        int block = FrameEncoder.INTERLEAVE_BLOCK_SIZE;
+        for (int pos = 0; pos < planeLength; pos += block) {
+            int n = Math.min(block, planeLength - pos);
+            System.arraycopy(bin, in, planeBytes[BLACK], pos, n);
+            in += n;
+            System.arraycopy(bin, in, planeBytes[RED], pos, n);
+            in += n;
+        }
+
+        FrameBuffer frame = new FrameBuffer(width, height);
+        int fullWords = bytesPerRow >>> 3;
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            long[] target = frame.planes[plane];
+            byte[] source = planeBytes[plane];
+            for (int row = 0; row < height; row++) {
+                int base = row * frame.wordsPerRow;
+                int rowStart = row * bytesPerRow;
+                for (int word = 0; word < fullWords; word++) {
+                    target[base + word] = (long) LONG_BIG_ENDIAN.get(source, rowStart + (word << 3));
+                }
+                for (int i = fullWords << 3; i < bytesPerRow; i++) {
+                    target[base + (i >>> 3)] |= (source[rowStart + i] & 0xFFL) << (56 - ((i & 7) << 3));
+                }
+            }
+        }
+        return frame;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FrameBuffer other)) {
+            return false;
+        }
+        return width == other.width && height == other.height
+                && Arrays.equals(planes[BLACK], other.planes[BLACK])
+                && Arrays.equals(planes[RED], other.planes[RED]);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(planes[BLACK]) * 17 + Arrays.hashCode(planes[RED]);
+    }
+
+    /**
+     * @param lsbFirst 每個 byte 內最左像素放在最低位
+     */
+    private byte[] planeBytes(int plane, boolean lsbFirst) {
+        int bytesPerRow = (width + 7) >>> 3;
+        byte[] out = new byte[bytesPerRow * height];
+        long[] bits = planes[plane];
+        int fullWords = bytesPerRow >>> 3;
+        for (int row = 0; row < height; row++) {
+            int base = row * wordsPerRow;
+            int rowStart = row * bytesPerRow;
+            for (int word = 0; word < fullWords; word++) {
+                long value = bits[base + word];
+                // Long.reverse 翻轉全部 64 位元，再把 byte 順序換回，即為每個 byte 內部翻轉
+                LONG_BIG_ENDIAN.set(out, rowStart + (word << 3), lsbFirst ? Long.reverseBytes(Long.reverse(value)) : value);
+            }
+            for (int i = fullWords << 3; i < bytesPerRow; i++) {
+                int value = (int) (bits[base + (i >>> 3)] >>> (56 - ((i & 7) << 3))) & 0xFF;
+                out[rowStart + i] = (byte) (lsbFirst ? Integer.reverse(value) >>> 24 : value);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 讀取從 x 開始的 64 個像素（x 可以不對齊或超出邊界，超出部分為 0）
+     */
+    private long readBits(int plane, int row, int x) {
+        long[] bits = planes[plane];
+        int base = row * wordsPerRow;
+        int word = Math.floorDiv(x, 64);
+        int shift = Math.floorMod(x, 64);
+        long high = word >= 0 && word < wordsPerRow ? bits[base + word] : 0L;
+        if (shift == 0) {
+            return high;
+        }
+        long low = word + 1 >= 0 && word + 1 < wordsPerRow ? bits[base + word + 1] : 0L;
+        return (high << shift) | (low >>> (64 - shift));
+    }
+
+    /**
+     * 第 word 個 long 中落在 [x0, x1) 的位元遮罩
+     */
+    private long spanMask(int word, int x0, int x1) {
+        int start = Math.max(x0 - (word << 6), 0);
+        int end = Math.min(x1 - (word << 6), 64);
+        if (start >= end) {
+            return 0L;
+        }
+        long mask = end == 64 ? -1L : ~(-1L >>> end);
+        return mask & (-1L >>> start);
+    }
+
+    private static long bit(int x) {
+        return 1L << (63 - (x & 63));
+    }
+
+    private void requireSameSize(FrameBuffer other) {
+        if (width != other.width || height != other.height) {
+            throw new IllegalArgumentException("幀尺寸不同: " + width + "x" + height + " vs " + other.width + "x" + other.height);
+        }
+    }
+}
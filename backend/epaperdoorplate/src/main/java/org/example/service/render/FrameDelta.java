@@ -0,0 +1,76 @@
+package org.example.service.render;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 幀差分編碼（以 bitmap.bin 的 800 bytes 交錯塊為單位）
+ * 塊 k 對應黑色層（k 為偶數）或紅色層（k 為奇數）的第 (k / 2) * 8 起連續 8 行，
+ * 設備可以只寫入變更的塊並對相應的行帶做局部刷新
+ *
+ * 格式（大端序）：
+ *   u8 版本(1) | u16 塊大小 | u32 完整幀長度 | u16 區段數
+ *   每個區段：u16 起始塊 | u16 塊數 | 該範圍內的新幀位元組（最後一塊可能不足塊大小）
+ */
+public final class FrameDelta {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private FrameDelta() {
+    }
+
+    /**
+     * 計算從 base 到 target 的差分
+     * @return 差分數據；兩幀長度不同時返回 null（只能發送完整幀）
+     */
+    public static byte[] encode(byte[] base, byte[] target, int blockSize) {
+        if (base == null || target == null || base.length != target.length) {
+            return null;
+        }
+        int blockCount = (target.length + blockSize - 1) / blockSize;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(FORMAT_VERSION);
+            out.writeShort(blockSize);
+            out.writeInt(target.length);
+
+            ByteArrayOutputStream runs = new ByteArrayOutputStream();
+            DataOutputStream runOut = new DataOutputStream(runs);
+            int runCount = 0;
+            int block = 0;
+            while (block < blockCount) {
+                if (!blockChanged(base, target, block, blockSize)) {
+                    block++;
+                    continue;
+                }
+                int start = block;
+                while (block < blockCount && blockChanged(base, target, block, blockSize)) {
+                    block++;
+                }
+                int from = start * blockSize;
+                int to = Math.min(block * blockSize, target.length);
+                runOut.writeShort(start);
+                runOut.writeShort(block - start);
+                runOut.write(target, from, to - from);
+                runCount++;
+            }
+
+            out.writeShort(runCount);
+            runs.writeTo(out);
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream 不會拋出 IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean blockChanged(byte[] base, byte[] target, int block, int blockSize) {
+        int from = block * blockSize;
+        int to = Math.min(from + blockSize, target.length);
+        return Arrays.mismatch(base, from, to, target, from, to) >= 0;
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.service.render;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * 畫布編碼工具
+ * 將渲染完成的畫布轉為 BMP 以及 ESP32 使用的 bitmap.bin（黑/紅兩層，每 800 bytes 交錯）
+ * 轉換規則與 render_doorplate_fixed.py 的 generate_bitmap_bin 完全一致
+ */
+public final class FrameEncoder {
+
+    /** 黑/紅兩層交錯合併時的塊大小（bytes） */
+    public static final int INTERLEAVE_BLOCK_SIZE = 800;
+
+    private FrameEncoder() {
+    }
+
+    /**
+     * 輸出 24 位元 BMP
+     */
+    public static byte[] toBmp(BufferedImage canvas) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(canvas.getWidth() * canvas.getHeight() * 3 + 54);
+        if (!ImageIO.write(canvas, "bmp", out)) {
+            throw new IOException("找不到 BMP 編碼器");
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 輸出 bitmap.bin（黑色層與紅色層，每 8 像素 1 byte，按 800 bytes 塊交錯）
+     */
+    public static byte[] toBin(BufferedImage canvas) {
+        return FramePacker.pack(canvas);
+    }
+
+    /**
+     * 判斷紅色：接近純紅，或紅白混合的抗鋸齒邊緣
+     */
+    static boolean isRed(int r, int g, int b) {
+        if (r > 200 && g < 100 && b < 100) {
+            return true;
+        }
+        return r > g + 30 && r > b + 30 && r > 180 && g < 120 && b < 120;
+    }
+
+    static byte[] interleave(byte[] first, byte[] second, int blockSize) {
+        byte[] combined = new byte[first.length + second.length];
+        int out = 0;
+        int maxLen = Math.max(first.length, second.length);
+        for (int pos = 0; pos < maxLen; pos += blockSize) {
+            int n1 = Math.max(0, Math.min(blockSize, first.length - pos));
+            System.arraycopy(first, pos, combined, out, n1);
+            out += n1;
+            int n2 = Math.max(0, Math.min(blockSize, second.length - pos));
+            System.arraycopy(second, pos, combined, out, n2);
+            out += n2;
+        }
+        return combined;
+    }
+}
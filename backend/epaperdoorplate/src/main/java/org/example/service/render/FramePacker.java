@@ -0,0 +1,247 @@
+package org.example.service.render;
+
+import org.example.model.DisplayProfile;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.stream.IntStream;
+
+/**
+ * bitmap.bin 位元平面打包
+ * 將畫布像素分類為黑 / 紅 / 白，按 MSB 在前打包成 FrameBuffer 的黑、紅兩層，再由 FrameBuffer 序列化（按 800 bytes 塊交錯）
+ * - 每次累積 64 個像素到一個 long，直接寫入平面
+ * - 灰階使用預先計算的各通道權重表（與逐像素計算 r * 0.299 + g * 0.587 + b * 0.114 的浮點結果完全相同）
+ * - 每行寫入互不重疊的 long 範圍，可選擇按行並行
+ * 輸出與 render_doorplate_fixed.py 的 canvas_to_bin_bytes 逐位元組一致
+ * 其他面板規格按旋轉與平面數選用專門的打包迴圈，直接以面板掃描順序讀取畫布，不需另外旋轉或裁切
+ */
+public final class FramePacker {
+
+    private static final double GRAY_THRESHOLD = 128;
+
+    // 少於這個行數時並行的調度開銷大於收益
+    private static final int PARALLEL_MIN_ROWS = 64;
+
+    private static final int WHITE = 0;
+    private static final int BLACK = 1;
+    private static final int RED = 2;
+
+    private static final double[] RED_WEIGHT = new double[256];
+    private static final double[] GREEN_WEIGHT = new double[256];
+    private static final double[] BLUE_WEIGHT = new double[256];
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            RED_WEIGHT[v] = v * 0.299;
+            GREEN_WEIGHT[v] = v * 0.587;
+            BLUE_WEIGHT[v] = v * 0.114;
+        }
+    }
+
+    private FramePacker() {
+    }
+
+    public static byte[] pack(BufferedImage canvas) {
+        return pack(canvas, false);
+    }
+
+    /**
+     * @param parallel 是否按行並行打包（使用 ForkJoin 公共池）
+     */
+    public static byte[] pack(BufferedImage canvas, boolean parallel) {
+        return packFrame(canvas, parallel).toBin();
+    }
+
+    /**
+     * @param pixels 按行排列的 RGB 像素（0xRRGGBB，忽略 alpha），長度為 width * height
+     */
+    public static byte[] pack(int[] pixels, int width, int height, boolean parallel) {
+        return packFrame(pixels, width, height, parallel).toBin();
+    }
+
+    public static FrameBuffer packFrame(BufferedImage canvas) {
+        return packFrame(canvas, false);
+    }
+
+    public static FrameBuffer packFrame(BufferedImage canvas, boolean parallel) {
+        return packFrame(rgbPixels(canvas), canvas.getWidth(), canvas.getHeight(), parallel);
+    }
+
+    public static FrameBuffer packFrame(int[] pixels, int width, int height, boolean parallel) {
+        FrameBuffer frame = new FrameBuffer(width, height);
+        long[] black = frame.plane(FrameBuffer.BLACK);
+        long[] red = frame.plane(FrameBuffer.RED);
+        int wordsPerRow = frame.wordsPerRow();
+
+        IntStream rows = IntStream.range(0, height);
+        if (parallel && height >= PARALLEL_MIN_ROWS) {
+            rows = rows.parallel();
+        }
+        rows.forEach(y -> packRow(pixels, y * width, width, black, red, y * wordsPerRow));
+        return frame;
+    }
+
+    /**
+     * 按面板規格打包
+     * @param canvas 佈局畫布（尺寸需為 profile 的 logicalWidth x logicalHeight）
+     * @return 面板尺寸的幀緩衝
+     */
+    public static FrameBuffer packFrame(BufferedImage canvas, DisplayProfile profile, boolean parallel) {
+        return packFrame(rgbPixels(canvas), canvas.getWidth(), canvas.getHeight(), profile, parallel);
+    }
+
+    public static FrameBuffer packFrame(int[] pixels, int width, int height, DisplayProfile profile, boolean parallel) {
+        if (width != profile.logicalWidth() || height != profile.logicalHeight()) {
+            throw new IllegalArgumentException("畫布尺寸 " + width + "x" + height + " 與面板規格 "
+                    + profile.logicalWidth() + "x" + profile.logicalHeight() + " 不符");
+        }
+        int rotation = profile.getRotation();
+        boolean mono = profile.getColorPlanes() == 1;
+        if (rotation == 0 && !mono) {
+            return packFrame(pixels, width, height, parallel);
+        }
+
+        int panelWidth = profile.getWidth();
+        int panelHeight = profile.getHeight();
+        FrameBuffer frame = new FrameBuffer(panelWidth, panelHeight);
+        long[] black = frame.plane(FrameBuffer.BLACK);
+        long[] red = frame.plane(FrameBuffer.RED);
+        int wordsPerRow = frame.wordsPerRow();
+
+        IntStream rows = IntStream.range(0, panelHeight);
+        if (parallel && panelHeight >= PARALLEL_MIN_ROWS) {
+            rows = rows.parallel();
+        }
+        if (rotation == 0) {
+            rows.forEach(y -> packRowMono(pixels, y * width, panelWidth, black, y * wordsPerRow));
+        } else {
+            // 面板第 y 行的像素在畫布中的起點與步長（畫布寬 width、高 height）
+            rows.forEach(y -> {
+                int start;
+                int step;
+                switch (rotation) {
+                    case 90 -> {
+                        start = (height - 1) * width + y;
+                        step = -width;
+                    }
+                    case 180 -> {
+                        start = (height - 1 - y) * width + width - 1;
+                        step = -1;
+                    }
+                    default -> {
+                        start = width - 1 - y;
+                        step = width;
+                    }
+                }
+                packRowStrided(pixels, start, step, panelWidth, mono, black, red, y * wordsPerRow);
+            });
+        }
+        return frame;
+    }
+
+    /**
+     * 將佈局尺寸的幀緩衝（例如 Python 渲染器的輸出）轉為面板規格
+     */
+    public static FrameBuffer adapt(FrameBuffer logical, DisplayProfile profile) {
+        FrameBuffer frame = logical.rotate(profile.getRotation());
+        return profile.getColorPlanes() == 1 ? frame.flattenToBlack() : frame;
+    }
+
+    private static void packRow(int[] pixels, int rowStart, int width, long[] black, long[] red, int out) {
+        for (int x = 0; x < width; x += 64, out++) {
+            // 行尾不足 64 像素時，剩餘位元補 0（白色）
+            int n = Math.min(64, width - x);
+            long blackBits = 0;
+            long redBits = 0;
+            for (int i = rowStart + x, end = i + n; i < end; i++) {
+                int type = classify(pixels[i]);
+                blackBits = (blackBits << 1) | (type & BLACK);
+                redBits = (redBits << 1) | (type >>> 1);
+            }
+            if (n < 64) {
+                blackBits <<= 64 - n;
+                redBits <<= 64 - n;
+            }
+            black[out] = blackBits;
+            red[out] = redBits;
+        }
+    }
+
+    /**
+     * 黑白面板：紅色與黑色都寫入黑色層
+     */
+    private static void packRowMono(int[] pixels, int rowStart, int width, long[] black, int out) {
+        for (int x = 0; x < width; x += 64, out++) {
+            int n = Math.min(64, width - x);
+            long blackBits = 0;
+            for (int i = rowStart + x, end = i + n; i < end; i++) {
+                blackBits = (blackBits << 1) | (classify(pixels[i]) != WHITE ? 1 : 0);
+            }
+            if (n < 64) {
+                blackBits <<= 64 - n;
+            }
+            black[out] = blackBits;
+        }
+    }
+
+    /**
+     * 旋轉的面板：按步長沿畫布的列或反向行讀取像素
+     */
+    private static void packRowStrided(int[] pixels, int start, int step, int width, boolean mono,
+                                       long[] black, long[] red, int out) {
+        int i = start;
+        for (int x = 0; x < width; x += 64, out++) {
+            int n = Math.min(64, width - x);
+            long blackBits = 0;
+            long redBits = 0;
+            for (int k = 0; k < n; k++, i += step) {
+                int type = classify(pixels[i]);
+                if (mono) {
+                    blackBits = (blackBits << 1) | (type != WHITE ? 1 : 0);
+                } else {
+                    blackBits = (blackBits << 1) | (type & BLACK);
+                    redBits = (redBits << 1) | (type >>> 1);
+                }
+            }
+            if (n < 64) {
+                blackBits <<= 64 - n;
+                redBits <<= 64 - n;
+            }
+            black[out] = blackBits;
+            red[out] = redBits;
+        }
+    }
+
+    private static int classify(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        if (FrameEncoder.isRed(r, g, b)) {
+            return RED;
+        }
+        return RED_WEIGHT[r] + GREEN_WEIGHT[g] + BLUE_WEIGHT[b] < GRAY_THRESHOLD ? BLACK : WHITE;
+    }
+
+    /**
+     * 取得按行排列的 RGB 像素；INT_RGB / INT_ARGB 畫布直接使用底層陣列，避免整幅複製
+     */
+    private static int[] rgbPixels(BufferedImage canvas) {
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        int type = canvas.getType();
+        WritableRaster raster = canvas.getRaster();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && raster.getDataBuffer() instanceof DataBufferInt dataBuffer
+                && dataBuffer.getNumBanks() == 1
+                && dataBuffer.getOffset() == 0
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel
+                && sampleModel.getScanlineStride() == width
+                && dataBuffer.getData().length == width * height) {
+            return dataBuffer.getData();
+        }
+        return canvas.getRGB(0, 0, width, height, null, 0, width);
+    }
+}
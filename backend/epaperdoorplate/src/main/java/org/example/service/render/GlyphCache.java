@@ -0,0 +1,274 @@
+package org.example.service.render;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 字形快取（以字體、字號、碼點為 key）
+ * - 每個字形只光柵化一次，保存抗鋸齒覆蓋率遮罩（每像素 1 byte），之後直接合成到畫布
+ * - 合成結果與 Graphics2D.drawString 逐像素一致：灰階抗鋸齒文字的原點四捨五入到整數像素，
+ *   混合公式與 Java2D 的 MUL8 查表相同
+ * - 按遮罩位元組數計算容量，超出上限時按 LRU 淘汰，記錄命中、未命中與淘汰次數
+ * 字號 ≥ 100 時 Java2D 改以輪廓填充繪製（結果受小數座標影響），這類字形不快取，由呼叫方直接 drawString
+ */
+@Component
+public class GlyphCache {
+
+    /** Java2D 改用輪廓繪製的像素高度門檻（OutlineTextRenderer.THRESHHOLD） */
+    public static final int MAX_CACHED_SIZE = 99;
+
+    // 每個字形的固定開銷估算（key、物件頭等）
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private static final int[][] MUL8 = new int[256][256];
+
+    static {
+        // 與 Java2D AlphaMath.c 的 mul8table 計算方式相同
+        for (int i = 1; i < 256; i++) {
+            int inc = (i << 16) + (i << 8) + i;
+            int val = inc + (1 << 23);
+            for (int j = 1; j < 256; j++) {
+                MUL8[i][j] = val >>> 24;
+                val += inc;
+            }
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Glyph> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public GlyphCache(@Value("${renderer.glyph-cache.max-size-mb:16}") long maxSizeMb) {
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    /**
+     * 字形能否經由快取繪製
+     */
+    public boolean supports(Font font) {
+        return maxBytes > 0 && font.getSize() <= MAX_CACHED_SIZE && font.getTransform().isIdentity();
+    }
+
+    /**
+     * 在 TYPE_INT_RGB 畫布上繪製單個字形，等同 Graphics2D.drawString（抗鋸齒開、小數度量開、無變換與裁剪）
+     * @param baselineY 基線座標
+     */
+    public void draw(BufferedImage canvas, Font font, int codePoint, double x, double baselineY, Color color) {
+        Glyph glyph = get(font, codePoint);
+        if (glyph.width == 0) {
+            return;
+        }
+        // drawString 以 float 傳遞座標，灰階抗鋸齒字形的原點四捨五入到整數像素
+        int originX = (int) Math.floor((float) x + 0.5f);
+        int originY = (int) Math.floor((float) baselineY + 0.5f);
+        composite(canvas, glyph, originX + glyph.offsetX, originY + glyph.offsetY, color.getRGB());
+    }
+
+    public Glyph get(Font font, int codePoint) {
+        Key key = new Key(font, codePoint);
+        Glyph glyph;
+        synchronized (this) {
+            glyph = entries.get(key);
+        }
+        if (glyph != null) {
+            hits.incrementAndGet();
+            return glyph;
+        }
+        misses.incrementAndGet();
+        // 光柵化在鎖外進行，並發的未命中可能重複光柵化，結果相同
+        glyph = rasterize(font, codePoint);
+        put(key, glyph);
+        return glyph;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * 快取統計（命中率、容量等）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("sizeBytes", currentBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return stats;
+    }
+
+    private void put(Key key, Glyph glyph) {
+        long weight = glyph.weight();
+        if (weight > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            Glyph previous = entries.put(key, glyph);
+            if (previous != null) {
+                currentBytes -= previous.weight();
+            }
+            currentBytes += weight;
+
+            Iterator<Map.Entry<Key, Glyph>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<Key, Glyph> eldest = it.next();
+                currentBytes -= eldest.getValue().weight();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 以 drawString 將字形畫在白底上，再由黑色文字的藍色通道還原覆蓋率（MUL8(255 - a, 255) = 255 - a）
+     */
+    private static Glyph rasterize(Font font, int codePoint) {
+        String text = new String(Character.toChars(codePoint));
+        FontRenderContext frc = new FontRenderContext(null, true, true);
+        Rectangle bounds = font.createGlyphVector(frc, text).getPixelBounds(frc, 0, 0);
+        // 像素邊界可能略有誤差，四周留白後再裁掉
+        int pad = 4;
+        int width = Math.max(bounds.width, 0) + pad * 2;
+        int height = Math.max(bounds.height, 0) + pad * 2;
+        int originX = pad - bounds.x;
+        int originY = pad - bounds.y;
+
+        BufferedImage scratch = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scratch.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            g.setFont(font);
+            g.setColor(Color.BLACK);
+            g.drawString(text, originX, originY);
+        } finally {
+            g.dispose();
+        }
+
+        int[] pixels = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[y * width + x] & 0xFF) != 0xFF) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0) {
+            // 空白字元
+            return new Glyph(0, 0, 0, 0, new byte[0]);
+        }
+
+        int glyphWidth = maxX - minX + 1;
+        int glyphHeight = maxY - minY + 1;
+        byte[] coverage = new byte[glyphWidth * glyphHeight];
+        for (int y = 0; y < glyphHeight; y++) {
+            for (int x = 0; x < glyphWidth; x++) {
+                coverage[y * glyphWidth + x] = (byte) (0xFF - (pixels[(minY + y) * width + minX + x] & 0xFF));
+            }
+        }
+        return new Glyph(minX - originX, minY - originY, glyphWidth, glyphHeight, coverage);
+    }
+
+    /**
+     * 按覆蓋率混合文字顏色（與 Java2D 抗鋸齒字形迴圈相同：dst = MUL8(255 - a, dst) + MUL8(a, src)）
+     */
+    private static void composite(BufferedImage canvas, Glyph glyph, int left, int top, int argb) {
+        int canvasWidth = canvas.getWidth();
+        int canvasHeight = canvas.getHeight();
+        int[] pixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        int srcR = (argb >> 16) & 0xFF;
+        int srcG = (argb >> 8) & 0xFF;
+        int srcB = argb & 0xFF;
+
+        int x0 = Math.max(0, -left);
+        int y0 = Math.max(0, -top);
+        int x1 = Math.min(glyph.width, canvasWidth - left);
+        int y1 = Math.min(glyph.height, canvasHeight - top);
+        for (int y = y0; y < y1; y++) {
+            int maskRow = y * glyph.width;
+            int canvasRow = (top + y) * canvasWidth + left;
+            for (int x = x0; x < x1; x++) {
+                int a = glyph.coverage[maskRow + x] & 0xFF;
+                if (a == 0) {
+                    continue;
+                }
+                if (a == 0xFF) {
+                    // 完全覆蓋時與 Java2D 相同直接寫入前景像素值（包含未使用的 alpha 位元組）
+                    pixels[canvasRow + x] = argb;
+                    continue;
+                }
+                int dst = pixels[canvasRow + x];
+                int[] srcMul = MUL8[a];
+                int[] dstMul = MUL8[0xFF - a];
+                int r = dstMul[(dst >> 16) & 0xFF] + srcMul[srcR];
+                int gr = dstMul[(dst >> 8) & 0xFF] + srcMul[srcG];
+                int b = dstMul[dst & 0xFF] + srcMul[srcB];
+                pixels[canvasRow + x] = (r << 16) | (gr << 8) | b;
+            }
+        }
+    }
+
+    private record Key(Font font, int codePoint) {
+        Key {
+            Objects.requireNonNull(font);
+        }
+    }
+
+    /**
+     * 光柵化後的字形：覆蓋率遮罩及其相對於整數原點（基線）的偏移
+     */
+    public static final class Glyph {
+        private final int offsetX;
+        private final int offsetY;
+        private final int width;
+        private final int height;
+        private final byte[] coverage;
+
+        Glyph(int offsetX, int offsetY, int width, int height, byte[] coverage) {
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.width = width;
+            this.height = height;
+            this.coverage = coverage;
+        }
+
+        long weight() {
+            return coverage.length + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
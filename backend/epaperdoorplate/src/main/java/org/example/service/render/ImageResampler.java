@@ -0,0 +1,153 @@
+package org.example.service.render;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 圖片縮放工具
+ * 與 Pillow 的 Image.resize 取樣方式一致（LANCZOS / NEAREST），確保 Java 與 Python 渲染結果相同
+ */
+public final class ImageResampler {
+
+    private static final double LANCZOS_SUPPORT = 3.0;
+
+    private ImageResampler() {
+    }
+
+    /**
+     * 最近鄰縮放（等同 Image.Resampling.NEAREST，以像素中心取樣）
+     */
+    public static BufferedImage nearest(BufferedImage src, int width, int height) {
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int[] srcPixels = src.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+        int[] dstPixels = new int[width * height];
+
+        int[] xIndex = new int[width];
+        for (int x = 0; x < width; x++) {
+            xIndex[x] = Math.min((int) ((x + 0.5) * srcWidth / width), srcWidth - 1);
+        }
+        for (int y = 0; y < height; y++) {
+            int sy = Math.min((int) ((y + 0.5) * srcHeight / height), srcHeight - 1);
+            int srcRow = sy * srcWidth;
+            int dstRow = y * width;
+            for (int x = 0; x < width; x++) {
+                dstPixels[dstRow + x] = srcPixels[srcRow + xIndex[x]];
+            }
+        }
+
+        BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        dst.setRGB(0, 0, width, height, dstPixels, 0, width);
+        return dst;
+    }
+
+    /**
+     * Lanczos 縮放（等同 Image.Resampling.LANCZOS，先水平後垂直兩次一維卷積）
+     */
+    public static BufferedImage lanczos(BufferedImage src, int width, int height) {
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int[] pixels = src.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+
+        // 水平方向：srcWidth x srcHeight -> width x srcHeight
+        int[] horizontal = new int[width * srcHeight];
+        Kernel kx = Kernel.create(srcWidth, width);
+        for (int y = 0; y < srcHeight; y++) {
+            int srcRow = y * srcWidth;
+            int dstRow = y * width;
+            for (int x = 0; x < width; x++) {
+                horizontal[dstRow + x] = kx.apply(pixels, srcRow, 1, x);
+            }
+        }
+
+        // 垂直方向：width x srcHeight -> width x height
+        int[] result = new int[width * height];
+        Kernel ky = Kernel.create(srcHeight, height);
+        for (int y = 0; y < height; y++) {
+            int dstRow = y * width;
+            for (int x = 0; x < width; x++) {
+                result[dstRow + x] = ky.apply(horizontal, x, width, y);
+            }
+        }
+
+        BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        dst.setRGB(0, 0, width, height, result, 0, width);
+        return dst;
+    }
+
+    private static double lanczosFilter(double x) {
+        if (x > -LANCZOS_SUPPORT && x < LANCZOS_SUPPORT) {
+            return sinc(x) * sinc(x / LANCZOS_SUPPORT);
+        }
+        return 0.0;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0.0) {
+            return 1.0;
+        }
+        x *= Math.PI;
+        return Math.sin(x) / x;
+    }
+
+    private static int clamp(double value) {
+        int v = (int) Math.round(value);
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+    /**
+     * 一維 Lanczos 權重表（每個輸出像素對應的起點與權重）
+     */
+    private static final class Kernel {
+        private final int[] bounds;
+        private final double[][] weights;
+
+        private Kernel(int[] bounds, double[][] weights) {
+            this.bounds = bounds;
+            this.weights = weights;
+        }
+
+        static Kernel create(int inSize, int outSize) {
+            double scale = (double) inSize / outSize;
+            double filterScale = Math.max(scale, 1.0);
+            double support = LANCZOS_SUPPORT * filterScale;
+
+            int[] bounds = new int[outSize];
+            double[][] weights = new double[outSize][];
+            for (int xx = 0; xx < outSize; xx++) {
+                double center = (xx + 0.5) * scale;
+                int xmin = Math.max((int) (center - support + 0.5), 0);
+                int xmax = Math.min((int) (center + support + 0.5), inSize) - xmin;
+                double[] k = new double[Math.max(xmax, 0)];
+                double total = 0.0;
+                for (int x = 0; x < k.length; x++) {
+                    double w = lanczosFilter((x + xmin - center + 0.5) / filterScale);
+                    k[x] = w;
+                    total += w;
+                }
+                if (total != 0.0) {
+                    for (int x = 0; x < k.length; x++) {
+                        k[x] /= total;
+                    }
+                }
+                bounds[xx] = xmin;
+                weights[xx] = k;
+            }
+            return new Kernel(bounds, weights);
+        }
+
+        int apply(int[] pixels, int offset, int stride, int index) {
+            double r = 0.0;
+            double g = 0.0;
+            double b = 0.0;
+            double[] k = weights[index];
+            int pos = offset + bounds[index] * stride;
+            for (int i = 0; i < k.length; i++, pos += stride) {
+                int rgb = pixels[pos];
+                r += ((rgb >> 16) & 0xFF) * k[i];
+                g += ((rgb >> 8) & 0xFF) * k[i];
+                b += (rgb & 0xFF) * k[i];
+            }
+            return (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+        }
+    }
+}
@@ -0,0 +1,713 @@
+package org.example.service.render;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 純 Java 門牌渲染引擎
+ * 取代每次請求都啟動 Python 子進程的做法，渲染規則與 render_doorplate_fixed.py 保持一致：
+ * - label / text / dynamicText：逐字排版（單行平均分散或多行網格）
+ * - image / dynamicImage：灰階、對比度（gamma）、三色閾值，再以 NEAREST 縮放到元素尺寸
+ * - guestQRCode：真正的 QR Code（指向前端 Guest 留言頁面），編碼並縮放後的點陣按內容快取
+ * - qrCode / barcode：外框加內容文字的佔位圖
+ * 排序後位於第一個動態元素（dynamicText、dynamicImage、guestQRCode）之前的靜態元素畫好後快取為靜態圖層，
+ * 共用同一模板的設備只需重畫其後的元素
+ */
+@Component
+public class JavaDoorplateRenderer {
+
+    /** 渲染規則版本（輸出結果變更時需更新，使渲染快取失效） */
+    public static final String VERSION = "java-5";
+
+    // 與 Python 腳本相同的字體查找順序（優先支持中文的字體）
+    private static final String[] CHINESE_FONT_PATHS = {
+        "/usr/share/fonts/truetype/noto/NotoSansCJK-Regular.ttc",
+        "/usr/share/fonts/truetype/noto/NotoSerifCJK-Regular.ttc",
+        "/usr/share/fonts/opentype/noto/NotoSansCJK-Regular.ttc",
+        "/usr/share/fonts/truetype/wqy/wqy-microhei.ttc",
+        "/usr/share/fonts/truetype/wqy/wqy-zenhei.ttc",
+        "C:/Windows/Fonts/msyh.ttc",
+        "C:/Windows/Fonts/simsun.ttc",
+        "C:/Windows/Fonts/simhei.ttf"
+    };
+
+    private static final String[] FALLBACK_FONT_PATHS = {
+        "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+        "/usr/share/fonts/truetype/liberation/LiberationSans-Regular.ttf"
+    };
+
+    // 圖片尺寸上限（與前端一致）
+    private static final int MAX_IMAGE_WIDTH = 800;
+    private static final int MAX_IMAGE_HEIGHT = 480;
+
+    // Guest QR Code 最大尺寸
+    private static final int GUEST_QR_MAX_SIZE = 150;
+    private static final int GUEST_QR_BOX_SIZE = 10;
+    private static final int GUEST_QR_BORDER = 2;
+
+    private static final Color RED = new Color(255, 0, 0);
+
+    private final AssetResolver assetResolver;
+    private final GlyphCache glyphCache;
+    private final ProcessedImageCache imageCache;
+    private final StaticLayerCache staticLayers;
+    private final CodeMatrixCache codeMatrices;
+    private final Font baseFont;
+    private final Map<Integer, Font> fontsBySize = new ConcurrentHashMap<>();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    public JavaDoorplateRenderer(AssetResolver assetResolver, GlyphCache glyphCache, ProcessedImageCache imageCache,
+                                 StaticLayerCache staticLayers, CodeMatrixCache codeMatrices) {
+        this.assetResolver = assetResolver;
+        this.glyphCache = glyphCache;
+        this.imageCache = imageCache;
+        this.staticLayers = staticLayers;
+        this.codeMatrices = codeMatrices;
+        this.baseFont = loadBaseFont();
+    }
+
+    /**
+     * 渲染所有元素到白色畫布
+     * @param elements 模板元素
+     * @param width 畫布寬度
+     * @param height 畫布高度
+     * @param frontendUrl 前端 URL（Guest QR Code 使用）
+     * @param uploadsDir 本地 uploads 目錄
+     * @return 渲染完成的 RGB 畫布
+     */
+    public BufferedImage render(List<Map<String, Object>> elements, int width, int height,
+                                String frontendUrl, File uploadsDir) {
+        BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = canvas.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+
+            // 按 zIndex 排序（穩定排序，與 Python sorted 一致）
+            List<Map<String, Object>> sorted = new ArrayList<>(elements);
+            sorted.sort(Comparator.comparingDouble(e -> doubleValue(e.get("zIndex"), 1)));
+
+            int first = drawStaticLayer(g, canvas, sorted, width, height, uploadsDir);
+            for (Map<String, Object> element : sorted.subList(first, sorted.size())) {
+                renderElement(g, canvas, element, frontendUrl, uploadsDir);
+            }
+        } finally {
+            g.dispose();
+        }
+        return canvas;
+    }
+
+    /**
+     * 繪製單個元素
+     * @return 結果是否穩定（可放入靜態圖層快取）；圖片載入失敗、外部圖片或繪製出錯時為 false
+     */
+    private boolean renderElement(Graphics2D g, BufferedImage canvas, Map<String, Object> element,
+                                  String frontendUrl, File uploadsDir) {
+        String type = stringValue(element.get("type"), "");
+        try {
+            switch (type) {
+                case "label":
+                case "dynamicText":
+                case "text":
+                    renderTextElement(g, canvas, element);
+                    return true;
+                case "image":
+                case "dynamicImage":
+                    return renderImageElement(g, element, uploadsDir);
+                case "guestQRCode":
+                    renderGuestQRCodeElement(g, canvas, element, frontendUrl);
+                    return true;
+                case "qr":
+                case "qrCode":
+                case "barcode":
+                    renderPlaceholderElement(g, element, type);
+                    return true;
+                default:
+                    System.out.println("未知元素類型: " + type);
+                    return true;
+            }
+        } catch (Exception e) {
+            System.out.println("渲染元素失敗 " + element.getOrDefault("id", "unknown") + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 畫出（或從快取複製）排序後位於第一個動態元素之前的靜態元素
+     * 只取前綴而非所有靜態元素，疊在動態元素上方的靜態元素仍按原順序重畫，結果與逐個繪製完全相同
+     * @return 之後需要逐個繪製的第一個元素索引
+     */
+    private int drawStaticLayer(Graphics2D g, BufferedImage canvas, List<Map<String, Object>> sorted,
+                                int width, int height, File uploadsDir) {
+        int split = 0;
+        while (split < sorted.size() && !isDynamic(sorted.get(split))) {
+            split++;
+        }
+        // 沒有靜態前綴或沒有動態元素（整幅由渲染結果快取處理）時不使用靜態圖層
+        if (split == 0 || split == sorted.size() || !staticLayers.isEnabled()
+                || canvas.getType() != BufferedImage.TYPE_INT_RGB) {
+            return 0;
+        }
+
+        List<Map<String, Object>> staticElements = sorted.subList(0, split);
+        String key = RenderKeys.contentHash(staticElements, width, height, VERSION);
+        int[] pixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        int[] layer = staticLayers.get(key);
+        if (layer != null) {
+            System.arraycopy(layer, 0, pixels, 0, pixels.length);
+            return split;
+        }
+
+        // 未命中：照常繪製靜態元素，結果穩定時保存副本
+        boolean stable = true;
+        for (Map<String, Object> element : staticElements) {
+            stable &= renderElement(g, canvas, element, null, uploadsDir);
+        }
+        if (stable) {
+            staticLayers.put(key, pixels.clone());
+        }
+        return split;
+    }
+
+    private static boolean isDynamic(Map<String, Object> element) {
+        String type = stringValue(element.get("type"), "");
+        return "dynamicText".equals(type) || "dynamicImage".equals(type) || "guestQRCode".equals(type);
+    }
+
+    /**
+     * 字形快取統計
+     */
+    public Map<String, Object> getGlyphCacheStats() {
+        return glyphCache.getStats();
+    }
+
+    /**
+     * 已處理圖片快取統計
+     */
+    public Map<String, Object> getImageCacheStats() {
+        return imageCache.getStats();
+    }
+
+    /**
+     * 靜態圖層快取統計
+     */
+    public Map<String, Object> getStaticLayerCacheStats() {
+        return staticLayers.getStats();
+    }
+
+    public Map<String, Object> getCodeMatrixCacheStats() {
+        return codeMatrices.getStats();
+    }
+
+    private void renderTextElement(Graphics2D g, BufferedImage canvas, Map<String, Object> element) {
+        int x = intValue(element.get("x"), 0);
+        int y = intValue(element.get("y"), 0);
+        int width = intValue(element.get("width"), 200);
+        int height = intValue(element.get("height"), 40);
+        String text = stringValue(element.get("text"), "");
+        int fontSize = intValue(element.get("fontSize"), 16);
+        Color color = parseColor(stringValue(element.get("color"), "#000000"));
+        boolean isVertical = "vertical".equals(stringValue(element.get("textDirection"), "horizontal"));
+
+        fontSize = Math.min(fontSize, Math.min(width, height));
+        if (fontSize <= 0) {
+            return;
+        }
+
+        int maxCols = width / fontSize;
+        int maxRows = height / fontSize;
+        int maxChars = maxCols * maxRows;
+
+        int[] codePoints = text.codePoints().limit(Math.max(maxChars, 0)).toArray();
+        int count = codePoints.length;
+        if (count == 0) {
+            return;
+        }
+
+        Font font = getFont(fontSize);
+        g.setFont(font);
+        g.setColor(color);
+        int ascent = g.getFontMetrics().getAscent();
+        TextTarget target = new TextTarget(g, canvas, font, color, ascent);
+
+        boolean canDistributeInLine = isVertical ? count <= maxRows : count <= maxCols;
+
+        if (canDistributeInLine) {
+            // 單行/單列平均分散
+            int availableSpace = isVertical ? height : width;
+            double spacing = count > 1 ? (double) (availableSpace - fontSize * count) / (count - 1) : 0;
+            for (int i = 0; i < count; i++) {
+                double charX = isVertical ? x : x + i * (fontSize + spacing);
+                double charY = isVertical ? y + i * (fontSize + spacing) : y;
+                target.drawChar(codePoints[i], charX, charY);
+            }
+        } else {
+            // 多行/多列排列
+            double horizontalSpacing = maxCols > 1 ? (double) (width - fontSize * maxCols) / (maxCols - 1) : 0;
+            double verticalSpacing = maxRows > 1 ? (double) (height - fontSize * maxRows) / (maxRows - 1) : 0;
+            for (int i = 0; i < count; i++) {
+                int col = isVertical ? i / maxRows : i % maxCols;
+                int row = isVertical ? i % maxRows : i / maxCols;
+                double charX = x + col * (fontSize + horizontalSpacing);
+                double charY = y + row * (fontSize + verticalSpacing);
+                target.drawChar(codePoints[i], charX, charY);
+            }
+        }
+    }
+
+    /**
+     * 逐字繪製目標：字號在快取範圍內時經由字形快取合成，否則直接 drawString（兩者結果逐像素一致）
+     */
+    private final class TextTarget {
+        private final Graphics2D g;
+        private final BufferedImage canvas;
+        private final Font font;
+        private final Color color;
+        private final int ascent;
+        private final boolean cached;
+
+        TextTarget(Graphics2D g, BufferedImage canvas, Font font, Color color, int ascent) {
+            this.g = g;
+            this.canvas = canvas;
+            this.font = font;
+            this.color = color;
+            this.ascent = ascent;
+            this.cached = canvas.getType() == BufferedImage.TYPE_INT_RGB && glyphCache.supports(font);
+        }
+
+        void drawChar(int codePoint, double x, double y) {
+            // Pillow 以字體上緣為錨點，Java 以基線為錨點，因此需加上 ascent
+            if (cached) {
+                glyphCache.draw(canvas, font, codePoint, x, y + ascent, color);
+            } else {
+                g.drawString(new String(Character.toChars(codePoint)), (float) x, (float) (y + ascent));
+            }
+        }
+    }
+
+    /**
+     * @return 結果是否穩定（非佔位圖且不是外部 http 圖片）
+     */
+    private boolean renderImageElement(Graphics2D g, Map<String, Object> element, File uploadsDir) {
+        int x = intValue(element.get("x"), 0);
+        int y = intValue(element.get("y"), 0);
+        int width = intValue(element.get("width"), 200);
+        int height = intValue(element.get("height"), 150);
+
+        String imageUrl = stringValue(element.get("imageUrl"), "").trim();
+        String content = stringValue(element.get("content"), "").trim();
+        String imageId = stringValue(element.get("imageId"), "").trim();
+        int blackThreshold = intValue(element.get("blackThreshold"), 128);
+        int whiteThreshold = intValue(element.get("whiteThreshold"), 128);
+        double contrast = doubleValue(element.get("contrast"), 1.0);
+
+        // 優先使用 imageUrl，如果沒有則使用 content，最後嘗試 imageId
+        String imagePath = null;
+        if (!imageUrl.isEmpty() && !"null".equals(imageUrl)) {
+            imagePath = imageUrl;
+        } else if (!content.isEmpty() && !"null".equals(content)) {
+            imagePath = content;
+        } else if (!imageId.isEmpty() && !"null".equals(imageId)) {
+            imagePath = "/images/" + imageId;
+        }
+
+        if (imagePath == null) {
+            System.out.println("錯誤: 沒有有效的圖片路徑（imageUrl、content 和 imageId 都為空）");
+            drawOutline(g, x, y, width, height, RED);
+            g.setColor(RED);
+            g.setFont(getDefaultFont());
+            g.drawString("NO IMAGE", x + 5, y + 5 + g.getFontMetrics().getAscent());
+            return true;
+        }
+
+        // 相同圖片與處理參數直接使用快取（外部 http 圖片內容可能變化，不快取）
+        String cacheKey = imagePath.startsWith("http")
+                ? null
+                : ProcessedImageCache.key(imagePath, blackThreshold, whiteThreshold, contrast, width, height);
+        BufferedImage processed = cacheKey != null ? imageCache.get(cacheKey) : null;
+        boolean stable = cacheKey != null;
+        if (processed == null) {
+            ProcessedImage result = processImage(imagePath, uploadsDir, blackThreshold, whiteThreshold, contrast);
+            processed = result.image();
+            if (processed.getWidth() != width || processed.getHeight() != height) {
+                // 縮放到模板元素的尺寸（使用 NEAREST 保持三色）
+                processed = ImageResampler.nearest(processed, width, height);
+            }
+            // 佔位圖（載入或處理失敗）不快取，下次渲染重試
+            if (cacheKey != null && !result.placeholder()) {
+                imageCache.put(cacheKey, processed);
+            }
+            stable &= !result.placeholder();
+        }
+        g.drawImage(processed, x, y, null);
+        return stable;
+    }
+
+    /**
+     * 處理結果；placeholder 表示載入或處理失敗，image 為佔位圖
+     */
+    record ProcessedImage(BufferedImage image, boolean placeholder) {
+    }
+
+    /**
+     * 處理圖片：載入、限制尺寸、灰階、對比度、三色閾值
+     */
+    ProcessedImage processImage(String imagePath, File uploadsDir, int blackThreshold, int whiteThreshold, double contrast) {
+        try {
+            BufferedImage img;
+            boolean placeholder = false;
+            try {
+                img = toRgb(loadImage(imagePath, uploadsDir));
+            } catch (ImageNotFoundException e) {
+                System.out.println("❌ 從存儲服務讀取圖片失敗: " + e.getMessage());
+                img = toRgb(placeholderImage("NO IMAGE"));
+                placeholder = true;
+            }
+
+            // 超出 800x480 時等比例縮放（與前端一致）
+            if (img.getWidth() > MAX_IMAGE_WIDTH || img.getHeight() > MAX_IMAGE_HEIGHT) {
+                double scale = Math.min((double) MAX_IMAGE_WIDTH / img.getWidth(), (double) MAX_IMAGE_HEIGHT / img.getHeight());
+                int targetWidth = (int) (img.getWidth() * scale);
+                int targetHeight = (int) (img.getHeight() * scale);
+                img = ImageResampler.lanczos(img, targetWidth, targetHeight);
+            }
+
+            if (contrast == 0.0) {
+                throw new ArithmeticException("contrast 不能為 0");
+            }
+
+            int w = img.getWidth();
+            int h = img.getHeight();
+            int[] pixels = img.getRGB(0, 0, w, h, null, 0, w);
+            double gamma = 1 / contrast;
+            for (int i = 0; i < pixels.length; i++) {
+                int rgb = pixels[i];
+                double gray = ((rgb >> 16) & 0xFF) * 0.299 + ((rgb >> 8) & 0xFF) * 0.587 + (rgb & 0xFF) * 0.114;
+                // 對比度調整（與前端一致，使用 gamma 校正）
+                if (contrast != 1.0) {
+                    gray = Math.min(255, Math.max(0, 255 * Math.pow(gray / 255, gamma)));
+                }
+                // 三色遮罩（與前端 ImageManager.jsx 一致）
+                if (gray > whiteThreshold) {
+                    pixels[i] = 0xFFFFFF;
+                } else if (gray < blackThreshold) {
+                    pixels[i] = 0x000000;
+                } else {
+                    pixels[i] = 0xFF0000;
+                }
+            }
+
+            BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            result.setRGB(0, 0, w, h, pixels, 0, w);
+            return new ProcessedImage(result, placeholder);
+        } catch (Exception e) {
+            System.out.println("處理圖片失敗: " + e.getMessage());
+            return new ProcessedImage(placeholderImage("ERROR"), true);
+        }
+    }
+
+    private BufferedImage loadImage(String imagePath, File uploadsDir) throws IOException {
+        if (imagePath.startsWith("data:")) {
+            String data = imagePath.substring(imagePath.indexOf(',') + 1);
+            return readImage(new ByteArrayInputStream(Base64.getDecoder().decode(data)));
+        }
+
+        if (imagePath.startsWith("http")) {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(imagePath))
+                        .timeout(Duration.ofSeconds(10))
+                        .GET()
+                        .build();
+                HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                return readImage(new ByteArrayInputStream(response.body()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("下載圖片被中斷: " + imagePath, e);
+            }
+        }
+
+        String fileName = AssetResolver.fileName(imagePath);
+
+        String currentDir = System.getProperty("user.dir");
+        List<File> candidates = new ArrayList<>();
+        if (uploadsDir != null) {
+            candidates.add(new File(uploadsDir, fileName));
+        }
+        candidates.add(new File(currentDir, "epaperdoorplate" + File.separator + "uploads" + File.separator + fileName));
+        candidates.add(new File(currentDir, "uploads" + File.separator + fileName));
+        candidates.add(new File(imagePath));
+
+        for (File candidate : candidates) {
+            if (candidate.isFile()) {
+                return readImage(new FileInputStream(candidate));
+            }
+        }
+
+        // 本地找不到時直接從存儲服務讀取（取代 Python 腳本回呼 /images/** 的做法）
+        byte[] data;
+        try {
+            data = assetResolver.readImage(fileName);
+        } catch (IOException e) {
+            throw new ImageNotFoundException(e.getMessage(), e);
+        }
+        return readImage(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * 本地與存儲服務都找不到圖片（以 NO IMAGE 佔位圖代替並照常處理）
+     */
+    private static final class ImageNotFoundException extends IOException {
+        ImageNotFoundException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private BufferedImage readImage(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            BufferedImage image = ImageIO.read(stream);
+            if (image == null) {
+                throw new IOException("不支援的圖片格式");
+            }
+            return image;
+        }
+    }
+
+    /**
+     * 轉為 RGB（丟棄 alpha 通道，與 Pillow convert('RGB') 一致）
+     */
+    private BufferedImage toRgb(BufferedImage src) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        BufferedImage rgb = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        if (src.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            // 灰階圖直接取樣本值，避免 getRGB 的色彩空間轉換改變亮度
+            Raster raster = src.getRaster();
+            int[] row = new int[w];
+            int[] out = new int[w];
+            for (int y = 0; y < h; y++) {
+                raster.getSamples(0, y, w, 1, 0, row);
+                for (int x = 0; x < w; x++) {
+                    int v = row[x];
+                    out[x] = (v << 16) | (v << 8) | v;
+                }
+                rgb.setRGB(0, y, w, 1, out, 0, w);
+            }
+            return rgb;
+        }
+        int[] pixels = src.getRGB(0, 0, w, h, null, 0, w);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0xFFFFFF;
+        }
+        rgb.setRGB(0, 0, w, h, pixels, 0, w);
+        return rgb;
+    }
+
+    private BufferedImage placeholderImage(String label) {
+        BufferedImage img = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setColor(RED);
+            g.fillRect(0, 0, 100, 100);
+            g.setColor(Color.WHITE);
+            g.setFont(getDefaultFont());
+            g.drawString(label, 10, 10 + g.getFontMetrics().getAscent());
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    private void renderGuestQRCodeElement(Graphics2D g, BufferedImage canvas, Map<String, Object> element, String frontendUrl) {
+        int x = intValue(element.get("x"), 0);
+        int y = intValue(element.get("y"), 0);
+        // Guest QR Code 固定大小（150x150 或以下）
+        int width = Math.min(intValue(element.get("width"), GUEST_QR_MAX_SIZE), GUEST_QR_MAX_SIZE);
+        int height = Math.min(intValue(element.get("height"), GUEST_QR_MAX_SIZE), GUEST_QR_MAX_SIZE);
+
+        String token = stringValue(element.get("guestQRCodeToken"), "");
+        if (token.isEmpty()) {
+            System.out.println("❌ Guest QR Code 元素缺少 token");
+            drawOutline(g, x, y, width, height, RED);
+            g.setColor(RED);
+            g.setFont(getDefaultFont());
+            g.drawString("NO TOKEN", x + 5, y + 5 + g.getFontMetrics().getAscent());
+            return;
+        }
+
+        String qrUrl = frontendUrl + "/guest/message?token=" + token;
+        try {
+            // 同一設備每次輪詢的 URL 都相同，編碼並縮放後的點陣直接重用
+            String key = CodeMatrixCache.key(qrUrl, ErrorCorrectionLevel.L.name(), GUEST_QR_BORDER, width, height);
+            CodeMatrixCache.Bitmap bitmap = codeMatrices.get(key);
+            if (bitmap == null) {
+                Map<EncodeHintType, Object> hints = Map.of(
+                        EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L,
+                        EncodeHintType.MARGIN, GUEST_QR_BORDER,
+                        EncodeHintType.CHARACTER_SET, "UTF-8");
+                BitMatrix matrix = new QRCodeWriter().encode(qrUrl, BarcodeFormat.QR_CODE, 0, 0, hints);
+                bitmap = CodeMatrixCache.Bitmap.scale(matrix, GUEST_QR_BOX_SIZE, width, height);
+                codeMatrices.put(key, bitmap);
+            }
+            bitmap.drawTo(canvas, x, y);
+        } catch (Exception e) {
+            System.out.println("❌ 生成 Guest QR Code 失敗: " + e.getMessage());
+            drawOutline(g, x, y, width, height, RED);
+            g.setColor(RED);
+            g.setFont(getDefaultFont());
+            g.drawString("QR ERROR", x + 5, y + 5 + g.getFontMetrics().getAscent());
+        }
+    }
+
+    private void renderPlaceholderElement(Graphics2D g, Map<String, Object> element, String type) {
+        boolean isBarcode = "barcode".equals(type);
+        int x = intValue(element.get("x"), 0);
+        int y = intValue(element.get("y"), 0);
+        int width = intValue(element.get("width"), isBarcode ? 200 : 100);
+        int height = intValue(element.get("height"), isBarcode ? 50 : 100);
+        String content = stringValue(element.get("content"), isBarcode ? "Barcode" : "QR Code");
+
+        drawOutline(g, x, y, width, height, Color.BLACK);
+        Font font = getFont(12);
+        g.setFont(font);
+        g.setColor(Color.BLACK);
+        g.drawString(content, x + 5, y + height - 20 + g.getFontMetrics().getAscent());
+    }
+
+    /**
+     * 繪製 2px 外框（與 Pillow rectangle(outline, width=2) 一致，向內描邊且包含右下角座標）
+     */
+    private void drawOutline(Graphics2D g, int x, int y, int width, int height, Color color) {
+        g.setColor(color);
+        g.drawRect(x, y, width, height);
+        if (width > 2 && height > 2) {
+            g.drawRect(x + 1, y + 1, width - 2, height - 2);
+        }
+    }
+
+    private Font getFont(int size) {
+        return fontsBySize.computeIfAbsent(size, s -> baseFont.deriveFont((float) s));
+    }
+
+    private Font getDefaultFont() {
+        return getFont(11);
+    }
+
+    private static Font loadBaseFont() {
+        for (String path : CHINESE_FONT_PATHS) {
+            Font font = tryLoadFont(path);
+            if (font != null && font.canDisplay('中')) {
+                System.out.println("✅ 成功加載中文字體: " + path);
+                return font;
+            }
+        }
+        System.out.println("⚠️ 未找到中文字體，嘗試使用備用字體（可能不支持中文）");
+        for (String path : FALLBACK_FONT_PATHS) {
+            Font font = tryLoadFont(path);
+            if (font != null) {
+                System.out.println("⚠️ 使用備用字體（不支持中文）: " + path);
+                return font;
+            }
+        }
+        System.out.println("❌ 警告: 未找到字體文件，使用 JVM 預設字體");
+        return new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+    }
+
+    private static Font tryLoadFont(String path) {
+        File file = new File(path);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            // createFonts 支援 .ttc 字體集合，取第一個字體（與 Pillow 預設 index=0 一致）
+            Font[] fonts = Font.createFonts(file);
+            return fonts.length > 0 ? fonts[0] : null;
+        } catch (Exception e) {
+            System.out.println("⚠️ 字體加載失敗 " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 解析顏色（支持 #RRGGBB 以及 black / red / white）
+     */
+    static Color parseColor(String color) {
+        String hex = color;
+        if (hex.startsWith("#")) {
+            hex = hex.substring(1);
+        } else {
+            switch (hex.toLowerCase()) {
+                case "black": hex = "000000"; break;
+                case "red": hex = "ff0000"; break;
+                case "white": hex = "ffffff"; break;
+                default: break;
+            }
+        }
+        return new Color(Integer.parseInt(hex.substring(0, 6), 16));
+    }
+
+    static int intValue(Object value, int defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value != null) {
+            try {
+                return (int) Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    static double doubleValue(Object value, double defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    static String stringValue(Object value, String defaultValue) {
+        return value == null ? defaultValue : value.toString();
+    }
+}
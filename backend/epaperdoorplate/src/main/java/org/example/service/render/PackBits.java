@@ -0,0 +1,52 @@
+package org.example.service.render;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * PackBits 遊程編碼（TIFF / Apple 標準格式，ESP32 上只需十幾行即可解碼）
+ * 門牌畫面大部分為白色（bin 中為連續的 0x00），96000 bytes 的幀通常可壓縮 10 倍以上
+ *
+ * 控制位元組 n（有號）：
+ *   0..127    後面跟 n + 1 個原樣位元組
+ *   -127..-1  下一個位元組重複 1 - n 次
+ *   -128      略過
+ */
+public final class PackBits {
+
+    /** status / frame 端點的 encoding 參數值 */
+    public static final String ENCODING = "rle";
+
+    private static final int MAX_RUN = 128;
+
+    private PackBits() {
+    }
+
+    public static byte[] encode(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 8 + 16);
+        int i = 0;
+        while (i < data.length) {
+            // 連續相同位元組（至少 2 個）輸出為重複段
+            int run = 1;
+            while (i + run < data.length && run < MAX_RUN && data[i + run] == data[i]) {
+                run++;
+            }
+            if (run >= 2) {
+                out.write(1 - run);
+                out.write(data[i]);
+                i += run;
+                continue;
+            }
+
+            // 原樣段：直到遇到至少 2 個相同位元組為止
+            int start = i;
+            i++;
+            while (i < data.length && i - start < MAX_RUN
+                    && !(i + 1 < data.length && data[i] == data[i + 1])) {
+                i++;
+            }
+            out.write(i - start - 1);
+            out.write(data, start, i - start);
+        }
+        return out.toByteArray();
+    }
+}
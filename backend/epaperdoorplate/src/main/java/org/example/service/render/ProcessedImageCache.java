@@ -0,0 +1,207 @@
+package org.example.service.render;
+
+import jakarta.annotation.PreDestroy;
+import org.example.service.storage.StorageService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 已處理圖片快取（灰階、對比度、三色閾值並縮放到元素尺寸後的結果）
+ * - key：圖片來源（imageId / 路徑）、黑白閾值、對比度、目標尺寸，上傳的圖片以 UUID 命名、內容不會變更
+ * - 記憶體層按像素位元組數計算容量，超出上限時按 LRU 淘汰
+ * - 可選的存儲層：以 PNG 保存到 StorageService（processed/ 目錄），重啟後或其他節點可直接讀取；
+ *   寫入在背景線程進行，不阻塞渲染
+ */
+@Component
+public class ProcessedImageCache {
+
+    private static final String STORAGE_DIR = "processed/";
+
+    private final long maxBytes;
+    private final StorageService storageService;
+    private final boolean storageEnabled;
+    private final ThreadPoolExecutor storageWriter;
+
+    private final LinkedHashMap<String, BufferedImage> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong storageHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ProcessedImageCache(@Value("${renderer.image-cache.max-size-mb:64}") long maxSizeMb,
+                               @Value("${renderer.image-cache.storage-enabled:false}") boolean storageEnabled,
+                               StorageService storageService) {
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+        this.storageService = storageService;
+        this.storageEnabled = storageEnabled;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.storageWriter = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "processed-image-writer-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * 組成快取 key（圖片來源可能是很長的 data URI，因此取雜湊）
+     */
+    public static String key(String source, int blackThreshold, int whiteThreshold, double contrast, int width, int height) {
+        String raw = source + "|" + blackThreshold + "|" + whiteThreshold + "|" + contrast + "|" + width + "x" + height;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(raw.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 取得已處理的圖片（返回的圖片為共用實例，只能讀取）
+     * @return 記憶體與存儲層都沒有時返回 null
+     */
+    public BufferedImage get(String key) {
+        BufferedImage image;
+        synchronized (this) {
+            image = entries.get(key);
+        }
+        if (image != null) {
+            hits.incrementAndGet();
+            return image;
+        }
+        image = readFromStorage(key);
+        if (image != null) {
+            storageHits.incrementAndGet();
+            putInMemory(key, image);
+            return image;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, BufferedImage image) {
+        putInMemory(key, image);
+        if (storageEnabled) {
+            try {
+                storageWriter.execute(() -> writeToStorage(key, image));
+            } catch (RejectedExecutionException e) {
+                // 關閉中，放棄寫入
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * 快取統計（命中率、容量等）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.get() + storageHits.get();
+        long missCount = misses.get();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("sizeBytes", currentBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("storageEnabled", storageEnabled);
+        stats.put("hits", hits.get());
+        stats.put("storageHits", storageHits.get());
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        storageWriter.shutdown();
+    }
+
+    private void putInMemory(String key, BufferedImage image) {
+        long weight = weigh(image);
+        if (maxBytes <= 0 || weight > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            BufferedImage previous = entries.put(key, image);
+            if (previous != null) {
+                currentBytes -= weigh(previous);
+            }
+            currentBytes += weight;
+
+            Iterator<Map.Entry<String, BufferedImage>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, BufferedImage> eldest = it.next();
+                currentBytes -= weigh(eldest.getValue());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private BufferedImage readFromStorage(String key) {
+        if (!storageEnabled) {
+            return null;
+        }
+        String path = "images/" + STORAGE_DIR + key + ".png";
+        try {
+            if (!storageService.fileExists(path)) {
+                return null;
+            }
+            try (InputStream in = storageService.getFileInputStream(path)) {
+                BufferedImage stored = ImageIO.read(in);
+                if (stored == null) {
+                    return null;
+                }
+                // 統一為 TYPE_INT_RGB，與渲染畫布相同以便直接繪製
+                BufferedImage rgb = new BufferedImage(stored.getWidth(), stored.getHeight(), BufferedImage.TYPE_INT_RGB);
+                int[] pixels = stored.getRGB(0, 0, stored.getWidth(), stored.getHeight(), null, 0, stored.getWidth());
+                rgb.setRGB(0, 0, stored.getWidth(), stored.getHeight(), pixels, 0, stored.getWidth());
+                return rgb;
+            }
+        } catch (Exception e) {
+            System.out.println("⚠️ 讀取已處理圖片失敗 " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToStorage(String key, BufferedImage image) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            storageService.saveFile(out.toByteArray(), STORAGE_DIR + key + ".png");
+        } catch (Exception e) {
+            System.out.println("⚠️ 保存已處理圖片失敗 " + key + ": " + e.getMessage());
+        }
+    }
+
+    private static long weigh(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+    }
+}
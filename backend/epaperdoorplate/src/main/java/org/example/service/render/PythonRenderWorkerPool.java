@@ -0,0 +1,296 @@
+package org.example.service.render;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 常駐 Python 渲染 worker 池
+ * 每個 worker 以 --worker 模式啟動 render_doorplate_fixed.py，只載入一次字體，
+ * 透過 stdin/stdout 交換帶長度前綴的 JSON 任務，直接回傳 BMP/BIN 數據（不使用臨時文件）
+ * - 固定數量的 worker，任務結束後歸還
+ * - 每個 worker 處理 N 個任務後回收重啟，崩潰或超時時立即重啟
+ * - 定期對閒置 worker 做 ping 健康檢查
+ */
+public class PythonRenderWorkerPool {
+
+    private static final long PING_TIMEOUT_MILLIS = 5000;
+
+    private final List<String> command;
+    private final Map<String, String> environment;
+    private final File workingDirectory;
+    private final int maxJobsPerWorker;
+    private final long jobTimeoutMillis;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+    private final ExecutorService ioExecutor;
+    private final ScheduledExecutorService healthChecker;
+    private volatile boolean closed;
+
+    /**
+     * 渲染輸出
+     */
+    public static class RenderOutput {
+        private final byte[] bmpData;
+        private final byte[] binData;
+
+        public RenderOutput(byte[] bmpData, byte[] binData) {
+            this.bmpData = bmpData;
+            this.binData = binData;
+        }
+
+        public byte[] getBmpData() {
+            return bmpData;
+        }
+
+        public byte[] getBinData() {
+            return binData;
+        }
+    }
+
+    public PythonRenderWorkerPool(List<String> command, Map<String, String> environment, File workingDirectory,
+                                  int poolSize, int maxJobsPerWorker, long jobTimeoutMillis,
+                                  long healthCheckIntervalMillis) {
+        this.command = new ArrayList<>(command);
+        this.environment = environment;
+        this.workingDirectory = workingDirectory;
+        this.maxJobsPerWorker = maxJobsPerWorker;
+        this.jobTimeoutMillis = jobTimeoutMillis;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.ioExecutor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "python-render-io-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "python-render-health");
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (int i = 0; i < poolSize; i++) {
+            Worker worker = new Worker(i + 1);
+            try {
+                worker.start();
+            } catch (IOException e) {
+                // 啟動失敗時保留空位，借出時再重試
+                System.err.println("❌ Python 渲染 worker #" + worker.slot + " 啟動失敗: " + e.getMessage());
+            }
+            idleWorkers.add(worker);
+        }
+        System.out.println("✅ Python 渲染 worker 池已建立，大小: " + poolSize
+                + "，每個 worker 最多處理 " + maxJobsPerWorker + " 個任務，任務超時: " + jobTimeoutMillis + " ms");
+
+        healthChecker.scheduleWithFixedDelay(this::checkIdleWorkers,
+                healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交渲染任務並等待結果
+     * @param requestJson 渲染請求（{"elements": [...], "width": 800, "height": 480}）
+     * @return 渲染輸出（BMP 與 BIN）
+     */
+    public RenderOutput render(byte[] requestJson) throws IOException, InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("Python 渲染 worker 池已關閉");
+        }
+        Worker worker = idleWorkers.poll(jobTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (worker == null) {
+            throw new IOException("等待可用的 Python 渲染 worker 超時");
+        }
+        JsonNode header;
+        RenderOutput output;
+        try {
+            worker.ensureStarted();
+            header = worker.call(requestJson, jobTimeoutMillis);
+            output = worker.lastOutput;
+            worker.lastOutput = null;
+        } catch (IOException | InterruptedException e) {
+            // 協議錯誤、崩潰或超時：該 worker 狀態不可信，直接重啟
+            worker.destroy();
+            throw e;
+        } finally {
+            if (worker.jobs >= maxJobsPerWorker) {
+                System.out.println("♻️ Python 渲染 worker #" + worker.slot + " 已處理 " + worker.jobs + " 個任務，回收重啟");
+                worker.destroy();
+            }
+            if (closed) {
+                worker.destroy();
+            } else {
+                idleWorkers.offer(worker);
+            }
+        }
+
+        if (!header.path("ok").asBoolean(false)) {
+            throw new IOException("Python 渲染失敗: " + header.path("error").asText("unknown error"));
+        }
+        return output;
+    }
+
+    /**
+     * 對所有閒置 worker 做 ping 健康檢查
+     */
+    private void checkIdleWorkers() {
+        List<Worker> checking = new ArrayList<>();
+        idleWorkers.drainTo(checking);
+        for (Worker worker : checking) {
+            try {
+                if (worker.process != null) {
+                    JsonNode header = worker.call(objectMapper.writeValueAsBytes(Map.of("command", "ping")), PING_TIMEOUT_MILLIS);
+                    if (!header.path("pong").asBoolean(false)) {
+                        throw new IOException("ping 響應無效");
+                    }
+                }
+                worker.ensureStarted();
+            } catch (Exception e) {
+                System.err.println("⚠️ Python 渲染 worker #" + worker.slot + " 健康檢查失敗，重啟: " + e.getMessage());
+                worker.destroy();
+                try {
+                    worker.ensureStarted();
+                } catch (IOException startError) {
+                    System.err.println("❌ Python 渲染 worker #" + worker.slot + " 重啟失敗: " + startError.getMessage());
+                }
+            } finally {
+                if (closed) {
+                    worker.destroy();
+                } else {
+                    idleWorkers.offer(worker);
+                }
+            }
+        }
+    }
+
+    /**
+     * 關閉所有 worker
+     */
+    public void shutdown() {
+        closed = true;
+        healthChecker.shutdownNow();
+        List<Worker> remaining = new ArrayList<>();
+        idleWorkers.drainTo(remaining);
+        for (Worker worker : remaining) {
+            worker.destroy();
+        }
+        ioExecutor.shutdownNow();
+        System.out.println("Python 渲染 worker 池已關閉");
+    }
+
+    /**
+     * 單個 worker（固定的池位，進程可被回收重建）
+     */
+    private final class Worker {
+        private final int slot;
+        private Process process;
+        private DataOutputStream stdin;
+        private DataInputStream stdout;
+        private int jobs;
+        private RenderOutput lastOutput;
+
+        Worker(int slot) {
+            this.slot = slot;
+        }
+
+        void start() throws IOException {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.environment().putAll(environment);
+            builder.directory(workingDirectory);
+            process = builder.start();
+            stdin = new DataOutputStream(process.getOutputStream());
+            stdout = new DataInputStream(process.getInputStream());
+            jobs = 0;
+
+            // 每個 worker 進程只有一個日誌讀取線程（Python 日誌全部輸出到 stderr）
+            Process current = process;
+            Thread logReader = new Thread(() -> {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(current.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        System.out.println("Python[" + slot + "]: " + line);
+                    }
+                } catch (IOException ignored) {
+                    // 進程結束
+                }
+            }, "python-render-log-" + slot);
+            logReader.setDaemon(true);
+            logReader.start();
+            System.out.println("🚀 Python 渲染 worker #" + slot + " 已啟動 (pid " + process.pid() + ")");
+        }
+
+        void ensureStarted() throws IOException {
+            if (process == null || !process.isAlive()) {
+                if (process != null) {
+                    System.err.println("⚠️ Python 渲染 worker #" + slot + " 已退出，重新啟動");
+                }
+                destroy();
+                start();
+            }
+        }
+
+        /**
+         * 發送一個請求並讀取響應，超時則強制結束進程
+         */
+        JsonNode call(byte[] request, long timeoutMillis) throws IOException, InterruptedException {
+            Future<JsonNode> future = ioExecutor.submit(() -> {
+                stdin.writeInt(request.length);
+                stdin.write(request);
+                stdin.flush();
+
+                byte[] headerBytes = new byte[stdout.readInt()];
+                stdout.readFully(headerBytes);
+                JsonNode header = objectMapper.readTree(headerBytes);
+                if (header.has("bmpSize")) {
+                    byte[] bmpData = new byte[header.get("bmpSize").asInt()];
+                    stdout.readFully(bmpData);
+                    byte[] binData = new byte[header.path("binSize").asInt(0)];
+                    stdout.readFully(binData);
+                    lastOutput = new RenderOutput(bmpData, binData.length > 0 ? binData : null);
+                    jobs++;
+                }
+                return header;
+            });
+            try {
+                return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                destroy();
+                throw new IOException("Python 渲染超時（" + timeoutMillis + " ms），worker #" + slot + " 已重啟");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw new IOException("Python 渲染 worker #" + slot + " 通信失敗: " + cause.getMessage(), cause);
+            }
+        }
+
+        void destroy() {
+            if (process != null) {
+                process.destroyForcibly();
+                process = null;
+            }
+            stdin = null;
+            stdout = null;
+            lastOutput = null;
+        }
+    }
+}
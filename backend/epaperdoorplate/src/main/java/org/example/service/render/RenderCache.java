@@ -0,0 +1,101 @@
+package org.example.service.render;
+
+import org.example.service.DoorplateRendererService.RenderResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 渲染結果快取（以內容雜湊為 key）
+ * - 按 BMP + 幀緩衝的位元組數計算容量，超出上限時按 LRU 淘汰
+ * - 記錄命中、未命中與淘汰次數
+ */
+@Component
+public class RenderCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, RenderResult> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RenderCache(@Value("${renderer.cache.max-size-mb:128}") long maxSizeMb) {
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    public RenderResult get(String key) {
+        RenderResult result;
+        synchronized (this) {
+            result = entries.get(key);
+        }
+        if (result != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    public void put(String key, RenderResult result) {
+        long weight = weigh(result);
+        if (maxBytes <= 0 || weight > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            RenderResult previous = entries.put(key, result);
+            if (previous != null) {
+                currentBytes -= weigh(previous);
+            }
+            currentBytes += weight;
+
+            Iterator<Map.Entry<String, RenderResult>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, RenderResult> eldest = it.next();
+                currentBytes -= weigh(eldest.getValue());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * 快取統計（命中率、容量等）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("sizeBytes", currentBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return stats;
+    }
+
+    private static long weigh(RenderResult result) {
+        long weight = 0;
+        if (result.getBmpData() != null) {
+            weight += result.getBmpData().length;
+        }
+        if (result.getFrame() != null) {
+            weight += result.getFrame().sizeBytes();
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.service.render;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 渲染內容的規範化雜湊
+ * 相同的元素列表（Map 鍵排序後）、畫布尺寸與渲染器版本一定得到相同的 key
+ */
+public final class RenderKeys {
+
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private RenderKeys() {
+    }
+
+    /**
+     * 計算內容雜湊（SHA-256，十六進位）
+     * @param elements 元素列表（需在注入 guestQRCodeToken 等動態值之後計算）
+     * @param width 畫布寬度
+     * @param height 畫布高度
+     * @param rendererVersion 渲染器版本（引擎或渲染規則變更時需更新）
+     */
+    public static String contentHash(List<Map<String, Object>> elements, int width, int height, String rendererVersion) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((rendererVersion + "|" + width + "x" + height + "|").getBytes(StandardCharsets.UTF_8));
+            digest.update(CANONICAL_MAPPER.writeValueAsBytes(elements));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("無法計算渲染內容雜湊: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 計算幀雜湊（bitmap.bin 位元組的 SHA-256，十六進位）
+     * 設備回報目前顯示的幀雜湊，相同時不需重新下載
+     */
+    public static String frameHash(byte[] binData) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(binData));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("無法計算幀雜湊: " + e.getMessage(), e);
+        }
+    }
+}
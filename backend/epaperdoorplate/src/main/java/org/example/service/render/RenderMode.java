@@ -0,0 +1,9 @@
+package org.example.service.render;
+
+/**
+ * 渲染輸出內容
+ */
+public enum RenderMode {
+    BIN_ONLY,     // 只生成位元平面（設備幀、激活碼畫面），不編碼 BMP
+    WITH_PREVIEW  // 另外生成 BMP（編輯器預覽）
+}
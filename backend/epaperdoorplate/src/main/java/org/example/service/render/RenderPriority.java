@@ -0,0 +1,11 @@
+package org.example.service.render;
+
+/**
+ * 渲染優先級（數值越小越優先）
+ */
+public enum RenderPriority {
+    DEVICE,      // 設備幀（/device/status、背景預渲染）
+    ACTIVATION,  // 激活碼畫面
+    PREVIEW,     // 編輯器預覽
+    BATCH        // 批次預渲染（模板編輯後整批設備），只使用其他渲染留下的空閒 worker
+}
@@ -0,0 +1,18 @@
+package org.example.service.render;
+
+/**
+ * 渲染調度器已滿或任務超過截止時間，呼叫方應在 retryAfterSeconds 秒後重試
+ */
+public class RenderRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public RenderRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
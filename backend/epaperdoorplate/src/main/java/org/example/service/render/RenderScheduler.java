@@ -0,0 +1,298 @@
+package org.example.service.render;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 渲染調度器：所有渲染經由固定數量的 worker 執行
+ * - 優先級隊列：設備幀 > 激活碼畫面 > 編輯器預覽 > 批次預渲染，同優先級先進先出
+ * - 隊列有上限，已滿時較高優先級的任務會擠掉隊尾最低優先級的任務，否則拒絕並返回建議重試時間
+ * - 每個任務有截止時間，排隊超時的任務不再執行
+ */
+@Component
+public class RenderScheduler {
+
+    private static final Comparator<Task<?>> ORDER = Comparator
+            .<Task<?>>comparingInt(task -> task.priority.ordinal())
+            .thenComparingLong(task -> task.sequence);
+
+    private final int workerCount;
+    private final int queueCapacity;
+    private final Map<RenderPriority, Long> deadlineMillis = new EnumMap<>(RenderPriority.class);
+
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>(ORDER);
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean closed;
+
+    // 渲染耗時的指數移動平均（估算重試時間用）
+    private volatile double averageRenderMillis = 500;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public RenderScheduler(@Value("${renderer.scheduler.workers:2}") int workerCount,
+                           @Value("${renderer.scheduler.queue-capacity:50}") int queueCapacity,
+                           @Value("${renderer.scheduler.device-deadline-seconds:30}") long deviceDeadlineSeconds,
+                           @Value("${renderer.scheduler.activation-deadline-seconds:30}") long activationDeadlineSeconds,
+                           @Value("${renderer.scheduler.preview-deadline-seconds:15}") long previewDeadlineSeconds,
+                           @Value("${renderer.scheduler.batch-deadline-seconds:120}") long batchDeadlineSeconds) {
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+        deadlineMillis.put(RenderPriority.DEVICE, TimeUnit.SECONDS.toMillis(deviceDeadlineSeconds));
+        deadlineMillis.put(RenderPriority.ACTIVATION, TimeUnit.SECONDS.toMillis(activationDeadlineSeconds));
+        deadlineMillis.put(RenderPriority.PREVIEW, TimeUnit.SECONDS.toMillis(previewDeadlineSeconds));
+        deadlineMillis.put(RenderPriority.BATCH, TimeUnit.SECONDS.toMillis(batchDeadlineSeconds));
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "render-worker-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        System.out.println("✅ 渲染調度器已啟動，worker: " + workerCount + "，隊列上限: " + queueCapacity);
+    }
+
+    /**
+     * 提交渲染並等待結果（呼叫線程阻塞直到完成、超時或被拒絕）
+     * @throws RenderRejectedException 隊列已滿、被更高優先級任務擠出或超過截止時間
+     */
+    public <T> T execute(RenderPriority priority, Callable<T> job) {
+        return execute(new Ticket(priority), job);
+    }
+
+    /**
+     * 以 ticket 提交渲染；任務排隊期間可經由 raise 提高優先級
+     */
+    public <T> T execute(Ticket ticket, Callable<T> job) {
+        Task<T> task;
+        synchronized (queue) {
+            if (closed) {
+                throw new IllegalStateException("渲染調度器已關閉");
+            }
+            RenderPriority priority = ticket.priority;
+            task = new Task<>(priority, sequence.incrementAndGet(), System.currentTimeMillis() + deadlineMillis.get(priority), job);
+            if (queue.size() >= queueCapacity) {
+                Task<?> lowest = lowestPriorityTask();
+                if (lowest == null || lowest.priority.compareTo(priority) <= 0) {
+                    rejected.incrementAndGet();
+                    throw new RenderRejectedException("渲染隊列已滿（" + priority + "）", retryAfterSeconds());
+                }
+                // 擠掉隊列中最不急的任務，讓更高優先級的渲染先排隊
+                queue.remove(lowest);
+                rejected.incrementAndGet();
+                lowest.future.completeExceptionally(
+                        new RenderRejectedException("渲染隊列已滿，被更高優先級的渲染擠出（" + lowest.priority + "）", retryAfterSeconds()));
+            }
+            queue.add(task);
+            ticket.task = task;
+            queue.notify();
+        }
+
+        try {
+            while (true) {
+                try {
+                    return task.future.get(Math.max(1, task.deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // 等待期間提高了優先級時截止時間可能已延後
+                    if (System.currentTimeMillis() < task.deadline) {
+                        continue;
+                    }
+                    RenderPriority priority;
+                    synchronized (queue) {
+                        queue.remove(task);
+                        priority = task.priority;
+                    }
+                    expired.incrementAndGet();
+                    throw new RenderRejectedException("渲染超過截止時間（" + priority + "）", retryAfterSeconds());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (queue) {
+                queue.remove(task);
+            }
+            throw new RuntimeException("等待渲染時被中斷", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 提高 ticket 的優先級（較低的優先級不變）
+     * 任務仍在排隊時按新的優先級重新排序，截止時間延後到新優先級的截止時間；已開始執行的任務不受影響
+     */
+    public void raise(Ticket ticket, RenderPriority priority) {
+        synchronized (queue) {
+            if (priority.compareTo(ticket.priority) >= 0) {
+                return;
+            }
+            ticket.priority = priority;
+            Task<?> task = ticket.task;
+            if (task == null || !queue.remove(task)) {
+                return;
+            }
+            task.priority = priority;
+            task.deadline = Math.max(task.deadline, System.currentTimeMillis() + deadlineMillis.get(priority));
+            queue.add(task);
+        }
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * 調度器統計（各優先級排隊數、完成/拒絕/超時次數）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Integer> queued = new LinkedHashMap<>();
+        for (RenderPriority priority : RenderPriority.values()) {
+            queued.put(priority.name(), 0);
+        }
+        synchronized (queue) {
+            for (Task<?> task : queue) {
+                queued.merge(task.priority.name(), 1, Integer::sum);
+            }
+        }
+        stats.put("workers", workerCount);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("queued", queued);
+        stats.put("completed", completed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("expired", expired.get());
+        stats.put("averageRenderMillis", Math.round(averageRenderMillis));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (queue) {
+            closed = true;
+            for (Task<?> task : queue) {
+                task.future.completeExceptionally(new IllegalStateException("渲染調度器已關閉"));
+            }
+            queue.clear();
+            queue.notifyAll();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            Task<?> task;
+            synchronized (queue) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        if (closed) {
+                            return;
+                        }
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                task = queue.poll();
+            }
+            if (System.currentTimeMillis() > task.deadline) {
+                // 呼叫方已不再等待，不浪費渲染資源
+                expired.incrementAndGet();
+                task.future.completeExceptionally(
+                        new RenderRejectedException("渲染排隊超過截止時間（" + task.priority + "）", retryAfterSeconds()));
+                continue;
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * 隊列中最不急的任務（最低優先級中最晚加入的）
+     */
+    private Task<?> lowestPriorityTask() {
+        Task<?> lowest = null;
+        for (Task<?> task : queue) {
+            if (lowest == null || ORDER.compare(task, lowest) > 0) {
+                lowest = task;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * 按目前排隊長度與平均渲染耗時估算建議重試時間（秒）
+     */
+    private long retryAfterSeconds() {
+        int queued;
+        synchronized (queue) {
+            queued = queue.size();
+        }
+        double waitMillis = (queued / (double) Math.max(1, workerCount) + 1) * averageRenderMillis;
+        return Math.max(1, (long) Math.ceil(waitMillis / 1000));
+    }
+
+    /**
+     * 一次提交的優先級（合併到同一渲染的呼叫方共用，較高優先級的呼叫方加入時以 raise 提高）
+     */
+    public static final class Ticket {
+        // 以下欄位由 queue 鎖保護
+        private RenderPriority priority;
+        private Task<?> task;
+
+        public Ticket(RenderPriority priority) {
+            this.priority = priority;
+        }
+    }
+
+    private final class Task<T> {
+        private RenderPriority priority; // 在隊列中時不可修改（先移出再重新加入），由 queue 鎖保護
+        private final long sequence;
+        private volatile long deadline;
+        private final Callable<T> job;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Task(RenderPriority priority, long sequence, long deadline, Callable<T> job) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.deadline = deadline;
+            this.job = job;
+        }
+
+        void run() {
+            long start = System.currentTimeMillis();
+            try {
+                future.complete(job.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                long elapsed = System.currentTimeMillis() - start;
+                averageRenderMillis = averageRenderMillis * 0.8 + elapsed * 0.2;
+                completed.incrementAndGet();
+            }
+        }
+    }
+}
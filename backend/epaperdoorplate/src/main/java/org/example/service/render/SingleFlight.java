@@ -0,0 +1,87 @@
+package org.example.service.render;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 合併相同 key 的並發任務：同一時間只執行一次，其餘呼叫等待並共用結果
+ * 執行失敗（包括超時、被拒絕）時，同一個異常會傳給所有等待者
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public V execute(K key, Supplier<V> work) {
+        return execute(key, () -> null, context -> work.get(), context -> {
+        });
+    }
+
+    /**
+     * 每個執行中的任務帶一個上下文：由第一個呼叫建立並傳給 work，合併進來的呼叫以 onJoin 取得
+     * （例如提高排隊中任務的優先級）
+     */
+    public <C> V execute(K key, Supplier<C> contextFactory, Function<C, V> work, Consumer<C> onJoin) {
+        C context = contextFactory.get();
+        Flight<V> flight = new Flight<>(new CompletableFuture<>(), context);
+        Flight<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            @SuppressWarnings("unchecked")
+            C shared = (C) existing.context();
+            onJoin.accept(shared);
+            return await(existing.future());
+        }
+
+        try {
+            V value = work.apply(context);
+            flight.future().complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.future().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 目前正在執行的 key 數量
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 累計被合併（未重複執行）的呼叫次數
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private V await(CompletableFuture<V> flight) {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待合併任務時被中斷", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    private record Flight<V>(CompletableFuture<V> future, Object context) {
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.service.render;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 靜態圖層快取
+ * 保存畫好靜態元素後的畫布像素（key 為這些靜態元素的內容雜湊，佈局內容變更時自然失效），
+ * 同一模板被多台設備共用時，每台設備只需在其上繪製動態元素
+ * - 按像素位元組數計算容量，超出上限時按 LRU 淘汰
+ */
+@Component
+public class StaticLayerCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, int[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public StaticLayerCache(@Value("${renderer.static-layer-cache.max-size-mb:48}") long maxSizeMb) {
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @return 畫布像素（共用實例，只能複製不能修改），未命中時返回 null
+     */
+    public int[] get(String key) {
+        int[] pixels;
+        synchronized (this) {
+            pixels = entries.get(key);
+        }
+        if (pixels != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return pixels;
+    }
+
+    /**
+     * @param pixels 畫布像素的副本（放入後不可再修改）
+     */
+    public void put(String key, int[] pixels) {
+        long weight = (long) pixels.length * Integer.BYTES;
+        if (maxBytes <= 0 || weight > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            int[] previous = entries.put(key, pixels);
+            if (previous != null) {
+                currentBytes -= (long) previous.length * Integer.BYTES;
+            }
+            currentBytes += weight;
+
+            Iterator<Map.Entry<String, int[]>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, int[]> eldest = it.next();
+                currentBytes -= (long) eldest.getValue().length * Integer.BYTES;
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * 快取統計（命中率、容量等）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("sizeBytes", currentBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return stats;
+    }
+}
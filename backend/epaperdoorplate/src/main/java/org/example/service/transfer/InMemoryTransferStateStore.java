@@ -0,0 +1,37 @@
+package org.example.service.transfer;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 不持久化的傳輸狀態存儲
+ * 用於開發環境和單實例部署，狀態只保存在追蹤器的記憶體中，重啟後清空
+ */
+@Service
+public class InMemoryTransferStateStore implements TransferStateStore {
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    @Override
+    public void saveAll(Map<String, TransferState> states) {
+    }
+
+    @Override
+    public void removeAll(Collection<String> deviceIds) {
+    }
+
+    @Override
+    public Map<String, TransferState> loadAll(long now) {
+        return Map.of();
+    }
+
+    @Override
+    public Map<String, TransferState> load(Collection<String> deviceIds, long now) {
+        return Map.of();
+    }
+}
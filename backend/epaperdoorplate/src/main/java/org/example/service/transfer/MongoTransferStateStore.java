@@ -0,0 +1,126 @@
+package org.example.service.transfer;
+
+import org.example.model.DeviceTransferState;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MongoDB 傳輸狀態存儲
+ * 用於多實例部署：各節點共用同一份狀態，重啟後仍保留；到期的記錄由 TTL 索引自動刪除
+ */
+@Service
+public class MongoTransferStateStore implements TransferStateStore {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private volatile boolean indexEnsured;
+
+    public MongoTransferStateStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public void saveAll(Map<String, TransferState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+        ensureIndex();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DeviceTransferState.class);
+        for (Map.Entry<String, TransferState> entry : states.entrySet()) {
+            TransferState state = entry.getValue();
+            Update update = new Update()
+                    .set("status", state.status().name())
+                    .set("startedAt", state.startedAt())
+                    .set("updatedAt", state.updatedAt())
+                    .set("expiresAt", new Date(state.expiresAt()))
+                    .set("errorMessage", state.errorMessage());
+            // 只覆蓋較舊的記錄（其他節點可能已寫入較新的狀態）
+            bulk.upsert(Query.query(Criteria.where("_id").is(entry.getKey())
+                    .orOperator(Criteria.where("updatedAt").lte(state.updatedAt()), Criteria.where("updatedAt").exists(false))), update);
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            // 條件不符時 upsert 會嘗試插入同一 _id（重複鍵）：表示存儲中已是較新的狀態，忽略；其他錯誤照常拋出
+            boolean onlyDuplicates = e.getErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY);
+            if (!onlyDuplicates) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> deviceIds) {
+        if (deviceIds.isEmpty()) {
+            return;
+        }
+        mongoTemplate.remove(Query.query(Criteria.where("_id").in(deviceIds)), DeviceTransferState.class);
+    }
+
+    @Override
+    public Map<String, TransferState> loadAll(long now) {
+        return toStates(mongoTemplate.find(Query.query(Criteria.where("expiresAt").gt(new Date(now))),
+                DeviceTransferState.class));
+    }
+
+    @Override
+    public Map<String, TransferState> load(Collection<String> deviceIds, long now) {
+        if (deviceIds.isEmpty()) {
+            return Map.of();
+        }
+        return toStates(mongoTemplate.find(Query.query(Criteria.where("_id").in(deviceIds)
+                .and("expiresAt").gt(new Date(now))), DeviceTransferState.class));
+    }
+
+    private static Map<String, TransferState> toStates(List<DeviceTransferState> documents) {
+        Map<String, TransferState> states = new HashMap<>();
+        for (DeviceTransferState doc : documents) {
+            TransferStatus status;
+            try {
+                status = TransferStatus.valueOf(doc.getStatus());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                continue;
+            }
+            long expiresAt = doc.getExpiresAt() != null ? doc.getExpiresAt().getTime() : 0;
+            states.put(doc.getDeviceId(), new TransferState(status, doc.getStartedAt(), doc.getUpdatedAt(),
+                    expiresAt, doc.getErrorMessage()));
+        }
+        return states;
+    }
+
+    /**
+     * 第一次寫入時建立 TTL 索引（到期即刪除）
+     */
+    private void ensureIndex() {
+        if (indexEnsured) {
+            return;
+        }
+        try {
+            mongoTemplate.indexOps(DeviceTransferState.class)
+                    .ensureIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO));
+            indexEnsured = true;
+        } catch (Exception e) {
+            System.err.println("⚠️ 建立 device_transfer_states TTL 索引失敗: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.service.transfer;
+
+/**
+ * 設備傳輸狀態記錄（不可變，狀態轉換時以新記錄取代）
+ * @param startedAt 開始傳輸的時間（毫秒）
+ * @param updatedAt 最後一次狀態變更的時間（毫秒）
+ * @param expiresAt 記錄到期的時間（毫秒）；傳輸中的記錄到期視為超時
+ * @param errorMessage 失敗時設備回報的錯誤信息
+ */
+public record TransferState(TransferStatus status, long startedAt, long updatedAt, long expiresAt, String errorMessage) {
+
+    public boolean isExpired(long now) {
+        return expiresAt <= now;
+    }
+}
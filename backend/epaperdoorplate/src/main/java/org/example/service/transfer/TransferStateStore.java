@@ -0,0 +1,36 @@
+package org.example.service.transfer;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 傳輸狀態的持久化接口
+ * 追蹤器在記憶體中維護狀態並批次寫入，重啟時由此載入尚未到期的記錄
+ */
+public interface TransferStateStore {
+
+    /**
+     * 是否持久化並由多個節點共用（為 false 時追蹤器不寫入存儲；為 true 時讀取設備列表以存儲中較新的記錄為準）
+     */
+    boolean isShared();
+
+    /**
+     * 批次寫入狀態（覆蓋同一設備的舊記錄）
+     */
+    void saveAll(Map<String, TransferState> states);
+
+    /**
+     * 批次刪除狀態
+     */
+    void removeAll(Collection<String> deviceIds);
+
+    /**
+     * 載入所有尚未到期的狀態
+     */
+    Map<String, TransferState> loadAll(long now);
+
+    /**
+     * 載入指定設備尚未到期的狀態（沒有記錄的設備不包含在結果中）
+     */
+    Map<String, TransferState> load(Collection<String> deviceIds, long now);
+}
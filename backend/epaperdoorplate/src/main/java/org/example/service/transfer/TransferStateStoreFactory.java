@@ -0,0 +1,39 @@
+package org.example.service.transfer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.List;
+
+/**
+ * 傳輸狀態存儲工廠
+ * 根據配置選擇只保存在記憶體或寫入 MongoDB
+ */
+@Configuration
+public class TransferStateStoreFactory {
+
+    @Value("${device.transfer.store:mongo}")
+    private String storeType;
+
+    @Autowired
+    private List<TransferStateStore> stores;
+
+    @Bean
+    @Primary
+    public TransferStateStore transferStateStore() {
+        if ("memory".equalsIgnoreCase(storeType)) {
+            return stores.stream()
+                    .filter(store -> store instanceof InMemoryTransferStateStore)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("In-memory transfer state store not found."));
+        }
+        // 默認使用 MongoDB（多節點共用，重啟後保留）
+        return stores.stream()
+                .filter(store -> store instanceof MongoTransferStateStore)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("MongoDB transfer state store not found."));
+    }
+}
@@ -0,0 +1,423 @@
+package org.example.service.transfer;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 設備傳輸狀態追蹤器
+ * - 每台設備一筆記錄（ConcurrentHashMap，讀取不加鎖），狀態轉換為單一 compute，數量上限內為 O(1)
+ * - 記錄按狀態設定到期時間（傳輸中：超時；成功 / 失敗：保留供前端顯示），由雜湊時間輪到期移除：
+ *   每筆記錄更新時排入到期刻度對應的槽，時間輪每個刻度只處理一個槽，不需掃描全部記錄
+ * - 記錄達上限時先淘汰最舊的已結束（成功 / 失敗）記錄，全部都在傳輸中才略過新設備
+ * - 維護傳輸中、成功、失敗的即時數量；狀態批次寫入 TransferStateStore，重啟時載入尚未到期的記錄
+ */
+@Service
+public class TransferStateTracker {
+
+    private final TransferStateStore store;
+    private final long inProgressTimeoutMillis;
+    private final long successRetentionMillis;
+    private final long failedRetentionMillis;
+    private final int maxEntries;
+    private final long tickMillis;
+
+    private final ConcurrentHashMap<String, TransferState> states = new ConcurrentHashMap<>();
+
+    // 雜湊時間輪：槽 = 到期刻度 & mask；到期刻度超過一圈的記錄在經過時重新放回同一槽
+    private final Queue<String>[] wheel;
+    private final int wheelMask;
+    private volatile long processedTick;
+    private final ScheduledExecutorService ticker;
+
+    // 等待寫入存儲的狀態（同一設備在一個刻度內多次變更只寫最後一次）
+    private final ConcurrentHashMap<String, TransferState> pendingSaves = new ConcurrentHashMap<>();
+    private final Set<String> pendingRemovals = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger[] statusCounts = new AtomicInteger[TransferStatus.values().length];
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public TransferStateTracker(TransferStateStore store,
+                                @Value("${device.transfer.in-progress-timeout-seconds:300}") long inProgressTimeoutSeconds,
+                                @Value("${device.transfer.success-retention-seconds:600}") long successRetentionSeconds,
+                                @Value("${device.transfer.failed-retention-seconds:3600}") long failedRetentionSeconds,
+                                @Value("${device.transfer.max-entries:100000}") int maxEntries,
+                                @Value("${device.transfer.tick-millis:1000}") long tickMillis,
+                                @Value("${device.transfer.wheel-size:512}") int wheelSize) {
+        this.store = store;
+        this.inProgressTimeoutMillis = inProgressTimeoutSeconds * 1000;
+        this.successRetentionMillis = successRetentionSeconds * 1000;
+        this.failedRetentionMillis = failedRetentionSeconds * 1000;
+        this.maxEntries = maxEntries;
+        this.tickMillis = Math.max(10, tickMillis);
+
+        // 槽數取不小於設定值的 2 的冪
+        int slots = Integer.highestOneBit(Math.max(16, wheelSize) - 1) << 1;
+        this.wheel = new Queue[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.wheelMask = slots - 1;
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new AtomicInteger();
+        }
+        this.processedTick = System.currentTimeMillis() / this.tickMillis;
+
+        restore();
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transfer-state-ticker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.ticker.scheduleWithFixedDelay(this::tickSafely, this.tickMillis, this.tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 標記設備開始傳輸（已交付幀，等待設備回報渲染結果）
+     */
+    public void markInProgress(String deviceId) {
+        long now = System.currentTimeMillis();
+        update(deviceId, new TransferState(TransferStatus.IN_PROGRESS, now, now, now + inProgressTimeoutMillis, null));
+    }
+
+    /**
+     * 記錄設備回報的渲染結果（沒有傳輸中的記錄時，例如已超時或由其他節點交付，以目前時間作為開始時間）
+     */
+    public TransferState complete(String deviceId, boolean success, String errorMessage) {
+        long now = System.currentTimeMillis();
+        TransferState previous = get(deviceId).orElse(null);
+        if (previous == null && store.isShared()) {
+            previous = loadFromStore(List.of(deviceId), now).get(deviceId);
+        }
+        long startedAt = previous != null ? previous.startedAt() : now;
+        TransferState next = success
+                ? new TransferState(TransferStatus.SUCCESS, startedAt, now, now + successRetentionMillis, null)
+                : new TransferState(TransferStatus.FAILED, startedAt, now, now + failedRetentionMillis, errorMessage);
+        update(deviceId, next);
+        return next;
+    }
+
+    /**
+     * 清除設備的傳輸狀態
+     */
+    public void clear(String deviceId) {
+        TransferState removed = states.remove(deviceId);
+        if (removed != null) {
+            count(removed, -1);
+        }
+        pendingSaves.remove(deviceId);
+        if (store.isShared()) {
+            pendingRemovals.add(deviceId);
+        }
+    }
+
+    /**
+     * @return 設備目前的傳輸狀態（不加鎖；已到期但尚未移除的記錄視為不存在）
+     */
+    public Optional<TransferState> get(String deviceId) {
+        TransferState state = states.get(deviceId);
+        if (state == null || state.isExpired(System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return Optional.of(state);
+    }
+
+    public boolean isTransferring(String deviceId) {
+        return get(deviceId).map(state -> state.status() == TransferStatus.IN_PROGRESS).orElse(false);
+    }
+
+    /**
+     * 讀取多台設備的傳輸狀態；存儲由多個節點共用時以一次查詢合併其他節點寫入的較新狀態
+     */
+    public Map<String, TransferState> getAll(Collection<String> deviceIds) {
+        long now = System.currentTimeMillis();
+        if (store.isShared()) {
+            try {
+                loadFromStore(deviceIds, now);
+            } catch (Exception e) {
+                System.err.println("⚠️ 讀取共用傳輸狀態失敗，使用本節點的狀態: " + e.getMessage());
+            }
+        }
+        Map<String, TransferState> result = new HashMap<>();
+        for (String deviceId : deviceIds) {
+            TransferState state = states.get(deviceId);
+            if (state != null && !state.isExpired(now)) {
+                result.put(deviceId, state);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 追蹤器統計（各狀態的即時數量、超時與到期次數等）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", states.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("inProgress", statusCounts[TransferStatus.IN_PROGRESS.ordinal()].get());
+        stats.put("success", statusCounts[TransferStatus.SUCCESS.ordinal()].get());
+        stats.put("failed", statusCounts[TransferStatus.FAILED.ordinal()].get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("expirations", expirations.get());
+        stats.put("evictions", evictions.get());
+        stats.put("dropped", dropped.get());
+        stats.put("pendingWrites", pendingSaves.size() + pendingRemovals.size());
+        stats.put("sharedStore", store.isShared());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("❌ 關閉前寫入傳輸狀態失敗: " + e.getMessage());
+        }
+    }
+
+    private void update(String deviceId, TransferState next) {
+        if (!put(deviceId, next) && (!evictFinished() || !put(deviceId, next))) {
+            dropped.incrementAndGet();
+            System.err.println("⚠️ 傳輸狀態記錄已達上限（" + maxEntries + "），略過 deviceId: " + deviceId);
+            return;
+        }
+        schedule(deviceId, next.expiresAt());
+        if (store.isShared()) {
+            pendingRemovals.remove(deviceId);
+            pendingSaves.put(deviceId, next);
+        }
+    }
+
+    /**
+     * 以單次 compute 取代記錄並調整各狀態的數量
+     * @return 是否已放入（新設備且記錄已達上限時為 false）
+     */
+    private boolean put(String deviceId, TransferState next) {
+        boolean[] stored = {true};
+        states.compute(deviceId, (key, previous) -> {
+            if (previous == null && states.size() >= maxEntries) {
+                stored[0] = false;
+                return null;
+            }
+            if (previous != null) {
+                count(previous, -1);
+            }
+            count(next, 1);
+            return next;
+        });
+        return stored[0];
+    }
+
+    /**
+     * 記錄已達上限時按 updatedAt 淘汰最舊的已結束記錄，一次淘汰到上限的 90%（分攤掃描全部記錄的成本）；
+     * 傳輸中的記錄不淘汰
+     * @return 是否有空位
+     */
+    private synchronized boolean evictFinished() {
+        int target = maxEntries - Math.max(1, maxEntries / 10);
+        if (states.size() <= target) {
+            // 其他線程已淘汰
+            return true;
+        }
+        List<Map.Entry<String, TransferState>> finished = new ArrayList<>();
+        for (Map.Entry<String, TransferState> entry : states.entrySet()) {
+            if (entry.getValue().status() != TransferStatus.IN_PROGRESS) {
+                finished.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        finished.sort(Comparator.comparingLong(entry -> entry.getValue().updatedAt()));
+        for (Map.Entry<String, TransferState> entry : finished) {
+            if (states.size() <= target) {
+                break;
+            }
+            // 條件移除：期間已更新的記錄（例如再次開始傳輸）保留
+            if (states.remove(entry.getKey(), entry.getValue())) {
+                count(entry.getValue(), -1);
+                evictions.incrementAndGet();
+            }
+        }
+        return states.size() < maxEntries;
+    }
+
+    private void count(TransferState state, int delta) {
+        statusCounts[state.status().ordinal()].addAndGet(delta);
+    }
+
+    private void schedule(String deviceId, long expiresAt) {
+        // 至少排在下下個刻度，避免與正在處理的刻度競爭
+        long tick = Math.max(expiryTick(expiresAt), processedTick + 2);
+        wheel[(int) (tick & wheelMask)].add(deviceId);
+    }
+
+    private long expiryTick(long expiresAt) {
+        return (expiresAt + tickMillis - 1) / tickMillis;
+    }
+
+    /**
+     * 處理到目前時間為止的刻度並寫入等待中的狀態
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        long nowTick = now / tickMillis;
+        while (processedTick < nowTick) {
+            long tick = processedTick + 1;
+            processSlot((int) (tick & wheelMask), now);
+            processedTick = tick;
+        }
+        flush();
+    }
+
+    private void processSlot(int slot, long now) {
+        Queue<String> queue = wheel[slot];
+        List<String> deviceIds = new ArrayList<>();
+        String deviceId;
+        while ((deviceId = queue.poll()) != null) {
+            deviceIds.add(deviceId);
+        }
+        for (String id : deviceIds) {
+            TransferState state = states.get(id);
+            if (state == null) {
+                continue;
+            }
+            if (state.isExpired(now)) {
+                expire(id, state);
+            } else if ((expiryTick(state.expiresAt()) & wheelMask) == slot) {
+                // 到期刻度在之後的某一圈，放回同一槽
+                queue.add(id);
+            }
+            // 其他情況是舊狀態留下的排程，新狀態已排在自己的槽
+        }
+    }
+
+    private void expire(String deviceId, TransferState state) {
+        if (!states.remove(deviceId, state)) {
+            return;
+        }
+        count(state, -1);
+        expirations.incrementAndGet();
+        if (state.status() == TransferStatus.IN_PROGRESS) {
+            timeouts.incrementAndGet();
+            System.out.println("⏱️ 設備傳輸超時，自動清除: " + deviceId);
+        }
+        // 存儲中的記錄由其自身的到期時間處理（MongoDB TTL 索引）
+    }
+
+    private void flush() {
+        if (!pendingRemovals.isEmpty()) {
+            List<String> removals = new ArrayList<>(pendingRemovals);
+            pendingRemovals.removeAll(removals);
+            try {
+                store.removeAll(removals);
+            } catch (RuntimeException e) {
+                // 刪除失敗時放回（期間已有新狀態等待寫入的設備不再刪除）
+                for (String deviceId : removals) {
+                    if (!pendingSaves.containsKey(deviceId)) {
+                        pendingRemovals.add(deviceId);
+                    }
+                }
+                throw e;
+            }
+        }
+        if (pendingSaves.isEmpty()) {
+            return;
+        }
+        Map<String, TransferState> batch = new HashMap<>();
+        for (String deviceId : pendingSaves.keySet()) {
+            TransferState state = pendingSaves.remove(deviceId);
+            if (state != null) {
+                batch.put(deviceId, state);
+            }
+        }
+        try {
+            store.saveAll(batch);
+        } catch (RuntimeException e) {
+            // 寫入失敗時放回（期間已有更新的狀態則保留較新的）
+            batch.forEach(pendingSaves::putIfAbsent);
+            throw e;
+        }
+    }
+
+    private void tickSafely() {
+        try {
+            tick();
+        } catch (Exception e) {
+            System.err.println("❌ 處理傳輸狀態時間輪失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 從存儲載入狀態，只取代本節點較舊的記錄
+     * @return 載入的記錄
+     */
+    private Map<String, TransferState> loadFromStore(Collection<String> deviceIds, long now) {
+        Map<String, TransferState> loaded = store.load(deviceIds, now);
+        loaded.forEach((deviceId, state) -> mergeNewer(deviceId, state));
+        return loaded;
+    }
+
+    private void mergeNewer(String deviceId, TransferState state) {
+        boolean[] replaced = {false};
+        states.compute(deviceId, (key, previous) -> {
+            if (previous != null ? previous.updatedAt() >= state.updatedAt() : states.size() >= maxEntries) {
+                return previous;
+            }
+            if (previous != null) {
+                count(previous, -1);
+            }
+            count(state, 1);
+            replaced[0] = true;
+            return state;
+        });
+        if (replaced[0]) {
+            schedule(deviceId, state.expiresAt());
+        }
+    }
+
+    /**
+     * 啟動時載入存儲中尚未到期的記錄
+     */
+    private void restore() {
+        if (!store.isShared()) {
+            return;
+        }
+        try {
+            Map<String, TransferState> restored = store.loadAll(System.currentTimeMillis());
+            restored.forEach(this::mergeNewer);
+            if (!restored.isEmpty()) {
+                System.out.println("✅ 已載入 " + restored.size() + " 筆設備傳輸狀態");
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ 載入設備傳輸狀態失敗: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.service.transfer;
+
+/**
+ * 設備傳輸狀態
+ */
+public enum TransferStatus {
+    IN_PROGRESS,  // 正在傳輸
+    SUCCESS,      // 渲染成功
+    FAILED        // 渲染失敗
+}
@@ -0,0 +1,75 @@
+package org.example.service;
+
+import org.example.repository.DeviceRepository;
+import org.example.service.cache.LookupCacheService;
+import org.example.service.transfer.TransferStateTracker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * render-complete：不帶版本的成功回報只在有交付中的傳輸時確認
+ */
+@ExtendWith(MockitoExtension.class)
+class DeviceServiceRenderCompleteTest {
+
+    private static final String DEVICE_ID = "device-1";
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private LookupCacheService lookupCache;
+
+    @Mock
+    private TransferStateTracker transferTracker;
+
+    @InjectMocks
+    private DeviceService deviceService;
+
+    @Test
+    void versionlessAckWithoutTransferIsIgnored() {
+        when(transferTracker.isTransferring(DEVICE_ID)).thenReturn(false);
+
+        Map<String, Object> resp = deviceService.handleRenderComplete(DEVICE_ID, "success", null, null);
+
+        assertEquals(true, resp.get("success"));
+        assertFalse(resp.containsKey("displayedVersion"));
+        verify(deviceRepository, never()).acknowledgeDisplayed(anyString(), any());
+        verify(transferTracker, never()).complete(anyString(), any(Boolean.class), any());
+    }
+
+    @Test
+    void versionlessAckDuringTransferConfirmsDeliveredVersion() {
+        when(transferTracker.isTransferring(DEVICE_ID)).thenReturn(true);
+        when(deviceRepository.acknowledgeDisplayed(DEVICE_ID, null)).thenReturn(OptionalLong.of(4));
+
+        Map<String, Object> resp = deviceService.handleRenderComplete(DEVICE_ID, "success", null, null);
+
+        assertEquals(4L, resp.get("displayedVersion"));
+        verify(transferTracker).complete(DEVICE_ID, true, null);
+    }
+
+    @Test
+    void versionedAckDoesNotNeedTransfer() {
+        when(deviceRepository.acknowledgeDisplayed(DEVICE_ID, 5L)).thenReturn(OptionalLong.of(5));
+
+        Map<String, Object> resp = deviceService.handleRenderComplete(DEVICE_ID, "success", null, 5L);
+
+        assertEquals(5L, resp.get("displayedVersion"));
+        verify(transferTracker, never()).isTransferring(anyString());
+    }
+}
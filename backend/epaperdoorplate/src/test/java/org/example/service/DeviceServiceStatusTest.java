@@ -0,0 +1,106 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.model.Device;
+import org.example.model.DeviceFrame;
+import org.example.repository.DeviceRepository;
+import org.example.service.cache.LookupCacheService;
+import org.example.service.transfer.TransferStateTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+/**
+ * /device/status 響應格式：舊版韌體（GxEPD2_Example.ino）只解析 binData 之前的前綴
+ */
+@ExtendWith(MockitoExtension.class)
+class DeviceServiceStatusTest {
+
+    private static final String DEVICE_ID = "device-1";
+
+    @Mock
+    private DeviceRepository deviceRepository;
+
+    @Mock
+    private DeviceFrameService frameService;
+
+    @Mock
+    private DeviceHeartbeatService heartbeatService;
+
+    @Mock
+    private LookupCacheService lookupCache;
+
+    @Mock
+    private TransferStateTracker transferTracker;
+
+    @InjectMocks
+    private DeviceService deviceService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private DeviceFrame frame;
+
+    @BeforeEach
+    void setUp() {
+        Device device = new Device();
+        device.setDeviceId(DEVICE_ID);
+        device.setActivated(true);
+        device.setRefreshInterval(300);
+        device.setCurrentTemplateId("template-1");
+        device.setContentVersion(3);
+        device.setDisplayedVersion(2);
+        when(lookupCache.findDevice(eq(DEVICE_ID), any())).thenReturn(Optional.of(device));
+
+        byte[] binData = new byte[96000];
+        frame = new DeviceFrame();
+        frame.setDeviceId(DEVICE_ID);
+        frame.setContentVersion(3);
+        frame.setFrameHash("0123456789abcdef0123456789abcdef");
+        frame.setBinData(binData);
+        when(frameService.getOrRenderFrame(any(Device.class))).thenReturn(Optional.of(frame));
+    }
+
+    @Test
+    void legacyResponseKeepsBinSizeInParsedPrefix() throws Exception {
+        when(frameService.getEncodedBin(any(DeviceFrame.class), isNull())).thenReturn(frame.getBinData());
+
+        Map<String, Object> resp = deviceService.status(DEVICE_ID, true);
+        String json = objectMapper.writeValueAsString(resp);
+
+        int binSizeIndex = json.indexOf("\"binSize\":");
+        assertTrue(binSizeIndex >= 0 && binSizeIndex < 200, "binSize 位置: " + binSizeIndex);
+        assertTrue(binSizeIndex < json.indexOf("\"binData\":\""));
+        assertTrue(json.startsWith("{\"success\":true,\"isActivated\":true,\"needUpdate\":true,\"refreshInterval\":300,\"binSize\":96000,"),
+                json.substring(0, 120));
+        for (String key : new String[]{"frameHash", "unchanged", "frameType", "contentVersion"}) {
+            assertFalse(resp.containsKey(key), key);
+        }
+    }
+
+    @Test
+    void optedInDeviceGetsFrameFields() {
+        Map<String, Object> resp = deviceService.status(DEVICE_ID, true, "previous-frame", true, false, null);
+
+        assertEquals(3L, resp.get("contentVersion"));
+        assertEquals(frame.getFrameHash(), resp.get("frameHash"));
+        assertEquals(false, resp.get("unchanged"));
+        assertEquals("full", resp.get("frameType"));
+        assertEquals(96000, resp.get("binSize"));
+        assertTrue(resp.containsKey("frameUrl"));
+        assertFalse(resp.containsKey("binData"));
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * LookupCache 測試：世代號保護、LRU 淘汰、存活時間與副本
+ */
+class LookupCacheTest {
+
+    @Test
+    void hitSkipsLoaderAndMissingResultIsNotCached() {
+        LookupCache<String> cache = new LookupCache<>(10, 60, null);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, Optional<String>> loader = key -> {
+            loads.incrementAndGet();
+            return key.startsWith("missing") ? Optional.empty() : Optional.of("value-" + key);
+        };
+
+        assertEquals(Optional.of("value-a"), cache.get("a", loader));
+        assertEquals(Optional.of("value-a"), cache.get("a", loader));
+        assertEquals(1, loads.get());
+
+        assertEquals(Optional.empty(), cache.get("missing", loader));
+        assertEquals(Optional.empty(), cache.get("missing", loader));
+        assertEquals(3, loads.get());
+        assertEquals(1L, cache.getStats().get("hits"));
+    }
+
+    @Test
+    void invalidationDuringLoadKeepsStaleValueOutOfCache() {
+        LookupCache<String> cache = new LookupCache<>(10, 60, null);
+        // 載入期間（已讀到舊資料、尚未放入快取）發生寫入與失效
+        Optional<String> first = cache.get("device", key -> {
+            cache.invalidate(key);
+            return Optional.of("stale");
+        });
+        assertEquals(Optional.of("stale"), first);
+
+        AtomicInteger loads = new AtomicInteger();
+        Optional<String> second = cache.get("device", key -> {
+            loads.incrementAndGet();
+            return Optional.of("fresh");
+        });
+        assertEquals(Optional.of("fresh"), second);
+        assertEquals(1, loads.get());
+        assertEquals(Optional.of("fresh"), cache.get("device", key -> Optional.of("unused")));
+    }
+
+    @Test
+    void invalidateIfAndClearAlsoGuardInFlightLoads() {
+        LookupCache<String> cache = new LookupCache<>(10, 60, null);
+        cache.get("a", key -> {
+            cache.invalidateIf(value -> false);
+            return Optional.of("stale-a");
+        });
+        cache.get("b", key -> {
+            cache.clear();
+            return Optional.of("stale-b");
+        });
+        assertEquals(0, cache.getStats().get("entries"));
+
+        cache.get("c", key -> Optional.of("template-1"));
+        cache.get("d", key -> Optional.of("template-2"));
+        cache.invalidateIf(value -> value.equals("template-1"));
+        assertEquals(1, cache.getStats().get("entries"));
+        assertEquals(Optional.of("reloaded"), cache.get("c", key -> Optional.of("reloaded")));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondCapacity() {
+        LookupCache<String> cache = new LookupCache<>(2, 60, null);
+        cache.get("a", key -> Optional.of("a"));
+        cache.get("b", key -> Optional.of("b"));
+        cache.get("a", key -> Optional.of("unused"));
+        cache.get("c", key -> Optional.of("c"));
+
+        assertEquals(1L, cache.getStats().get("evictions"));
+        assertEquals(Optional.of("a"), cache.get("a", key -> Optional.of("reloaded")));
+        assertEquals(Optional.of("reloaded"), cache.get("b", key -> Optional.of("reloaded")));
+    }
+
+    @Test
+    void expiredEntryIsReloaded() throws InterruptedException {
+        LookupCache<String> cache = new LookupCache<>(10, 1, null);
+        cache.get("a", key -> Optional.of("old"));
+        Thread.sleep(1100);
+        assertEquals(Optional.of("new"), cache.get("a", key -> Optional.of("new")));
+    }
+
+    @Test
+    void copierReturnsIndependentInstances() {
+        LookupCache<List<String>> cache = new LookupCache<>(10, 60, ArrayList::new);
+        List<String> loaded = new ArrayList<>(List.of("x"));
+        List<String> first = cache.get("a", key -> Optional.of(loaded)).orElseThrow();
+        assertSame(loaded, first);
+
+        // 呼叫方修改返回值不影響快取內容
+        first.add("modified");
+        List<String> second = cache.get("a", key -> Optional.empty()).orElseThrow();
+        assertEquals(List.of("x"), second);
+        assertNotSame(second, cache.get("a", key -> Optional.empty()).orElseThrow());
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        LookupCache<String> cache = new LookupCache<>(0, 60, null);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("a", key -> Optional.of("v" + loads.incrementAndGet()));
+        assertEquals(Optional.of("v2"), cache.get("a", key -> Optional.of("v" + loads.incrementAndGet())));
+        assertFalse(cache.isEnabled());
+    }
+}
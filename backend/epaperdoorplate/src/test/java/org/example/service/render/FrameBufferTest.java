@@ -0,0 +1,191 @@
+package org.example.service.render;
+
+import org.example.model.DisplayProfile;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FrameBuffer 測試：以逐像素的參考實現對照位元運算的結果
+ */
+class FrameBufferTest {
+
+    @Test
+    void toBinMatchesPerPixelLayout() {
+        FrameBuffer frame = randomFrame(800, 480, 1);
+        assertArrayEquals(referenceBin(frame), frame.toBin());
+    }
+
+    @Test
+    void binRoundTripForUnalignedWidths() {
+        for (int width : new int[]{1, 7, 8, 63, 64, 65, 100, 129, 800}) {
+            FrameBuffer frame = randomFrame(width, 13, width);
+            byte[] bin = frame.toBin();
+            assertArrayEquals(referenceBin(frame), bin, "width " + width);
+            assertEquals(frame, FrameBuffer.fromBin(bin, width, 13), "width " + width);
+        }
+    }
+
+    @Test
+    void fromBinRejectsWrongLength() {
+        assertThrows(IllegalArgumentException.class, () -> FrameBuffer.fromBin(new byte[10], 800, 480));
+    }
+
+    @Test
+    void fillRectClipsToFrame() {
+        FrameBuffer frame = new FrameBuffer(130, 10);
+        frame.fillRect(FrameBuffer.RED, 60, -2, 100, 5, true);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 130; x++) {
+                assertEquals(x >= 60 && y < 3, frame.get(FrameBuffer.RED, x, y), x + "," + y);
+                assertFalse(frame.get(FrameBuffer.BLACK, x, y));
+            }
+        }
+        assertEquals(70 * 3, frame.popcount());
+    }
+
+    @Test
+    void cropAndBlitAtUnalignedOffsets() {
+        FrameBuffer source = randomFrame(200, 40, 2);
+        FrameBuffer part = source.crop(37, 5, 91, 20);
+        for (int plane = 0; plane < FrameBuffer.PLANE_COUNT; plane++) {
+            for (int y = 0; y < 20; y++) {
+                for (int x = 0; x < 91; x++) {
+                    assertEquals(source.get(plane, x + 37, y + 5), part.get(plane, x, y));
+                }
+            }
+        }
+
+        FrameBuffer target = randomFrame(150, 30, 3);
+        FrameBuffer before = FrameBuffer.fromBin(target.toBin(), 150, 30);
+        target.blit(part, 100, -3);
+        for (int plane = 0; plane < FrameBuffer.PLANE_COUNT; plane++) {
+            for (int y = 0; y < 30; y++) {
+                for (int x = 0; x < 150; x++) {
+                    boolean inside = x >= 100 && y < 17;
+                    boolean expected = inside ? part.get(plane, x - 100, y + 3) : before.get(plane, x, y);
+                    assertEquals(expected, target.get(plane, x, y), plane + ":" + x + "," + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    void xorDiffCountsChangedPixels() {
+        FrameBuffer a = randomFrame(97, 11, 4);
+        FrameBuffer b = FrameBuffer.fromBin(a.toBin(), 97, 11);
+        assertEquals(a, b);
+        assertEquals(0, a.xorDiff(b).popcount());
+
+        b.set(FrameBuffer.BLACK, 96, 10, !b.get(FrameBuffer.BLACK, 96, 10));
+        b.set(FrameBuffer.RED, 0, 0, !b.get(FrameBuffer.RED, 0, 0));
+        assertNotEquals(a, b);
+        FrameBuffer diff = a.xorDiff(b);
+        assertEquals(2, diff.popcount());
+        assertTrue(diff.get(FrameBuffer.BLACK, 96, 10));
+        assertTrue(diff.get(FrameBuffer.RED, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> a.xorDiff(new FrameBuffer(96, 11)));
+    }
+
+    @Test
+    void rotateMovesPixelsClockwise() {
+        FrameBuffer frame = randomFrame(70, 9, 5);
+        FrameBuffer rotated = frame.rotate(90);
+        assertEquals(9, rotated.getWidth());
+        assertEquals(70, rotated.getHeight());
+        for (int plane = 0; plane < FrameBuffer.PLANE_COUNT; plane++) {
+            for (int y = 0; y < 9; y++) {
+                for (int x = 0; x < 70; x++) {
+                    assertEquals(frame.get(plane, x, y), rotated.get(plane, 8 - y, x));
+                }
+            }
+        }
+        assertEquals(frame.rotate(180), rotated.rotate(90));
+        assertEquals(frame.rotate(270), rotated.rotate(180));
+        assertEquals(frame, rotated.rotate(270));
+        assertSame(frame, frame.rotate(0));
+        assertThrows(IllegalArgumentException.class, () -> frame.rotate(45));
+    }
+
+    @Test
+    void profileControlsPlanesBitOrderAndInterleave() {
+        FrameBuffer frame = randomFrame(100, 20, 6);
+        byte[] msb = frame.toBin();
+        assertArrayEquals(msb, frame.toBin(DisplayProfile.defaultProfile()));
+
+        int planeLength = 13 * 20;
+        byte[] black = new byte[planeLength];
+        byte[] red = new byte[planeLength];
+        System.arraycopy(msb, 0, black, 0, planeLength);
+        System.arraycopy(msb, planeLength, red, 0, planeLength);
+
+        DisplayProfile profile = new DisplayProfile(100, 20, 2, DisplayProfile.BIT_ORDER_LSB, 0, 0);
+        byte[] lsb = frame.toBin(profile);
+        assertEquals(msb.length, lsb.length);
+        for (int i = 0; i < lsb.length; i++) {
+            // 交錯塊大小 0：黑色層之後接紅色層，每個 byte 內部位元翻轉
+            byte expected = i < planeLength ? black[i] : red[i - planeLength];
+            assertEquals((byte) (Integer.reverse(expected & 0xFF) >>> 24), lsb[i], "byte " + i);
+        }
+
+        profile = new DisplayProfile(100, 20, 1, DisplayProfile.BIT_ORDER_MSB, 800, 0);
+        assertArrayEquals(black, frame.toBin(profile));
+        FrameBuffer flattened = frame.flattenToBlack();
+        assertEquals(0, flattened.popcount(FrameBuffer.RED));
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 100; x++) {
+                assertEquals(frame.get(FrameBuffer.BLACK, x, y) || frame.get(FrameBuffer.RED, x, y),
+                        flattened.get(FrameBuffer.BLACK, x, y));
+            }
+        }
+    }
+
+    private static FrameBuffer randomFrame(int width, int height, long seed) {
+        Random random = new Random(seed);
+        FrameBuffer frame = new FrameBuffer(width, height);
+        for (int plane = 0; plane < FrameBuffer.PLANE_COUNT; plane++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    frame.set(plane, x, y, random.nextBoolean());
+                }
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * 逐像素參考實現：每層每行 ceil(width / 8) bytes，MSB 在前，兩層按 800 bytes 塊交錯
+     */
+    private static byte[] referenceBin(FrameBuffer frame) {
+        int bytesPerRow = (frame.getWidth() + 7) / 8;
+        int planeLength = bytesPerRow * frame.getHeight();
+        byte[][] planes = new byte[FrameBuffer.PLANE_COUNT][planeLength];
+        for (int plane = 0; plane < FrameBuffer.PLANE_COUNT; plane++) {
+            for (int y = 0; y < frame.getHeight(); y++) {
+                for (int x = 0; x < frame.getWidth(); x++) {
+                    if (frame.get(plane, x, y)) {
+                        planes[plane][y * bytesPerRow + x / 8] |= (byte) (0x80 >>> (x % 8));
+                    }
+                }
+            }
+        }
+        byte[] out = new byte[planeLength * 2];
+        int pos = 0;
+        for (int start = 0; start < planeLength; start += FrameEncoder.INTERLEAVE_BLOCK_SIZE) {
+            int n = Math.min(FrameEncoder.INTERLEAVE_BLOCK_SIZE, planeLength - start);
+            System.arraycopy(planes[FrameBuffer.BLACK], start, out, pos, n);
+            pos += n;
+            System.arraycopy(planes[FrameBuffer.RED], start, out, pos, n);
+            pos += n;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.service.render;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * FrameDelta 往返測試：以設備端的解碼方式套用差分，結果需與目標幀逐位元組相同
+ */
+class FrameDeltaTest {
+
+    private static final int FRAME_LENGTH = 96000;
+    private static final int BLOCK_SIZE = 800;
+
+    @Test
+    void identicalFramesProduceEmptyDelta() throws IOException {
+        byte[] frame = randomFrame(FRAME_LENGTH, 1);
+        byte[] delta = FrameDelta.encode(frame, frame.clone(), BLOCK_SIZE);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        assertEquals(FrameDelta.FORMAT_VERSION, in.readUnsignedByte());
+        assertEquals(BLOCK_SIZE, in.readUnsignedShort());
+        assertEquals(FRAME_LENGTH, in.readInt());
+        assertEquals(0, in.readUnsignedShort());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void singleByteChangeSendsOnlyItsBlock() throws IOException {
+        byte[] base = randomFrame(FRAME_LENGTH, 2);
+        byte[] target = base.clone();
+        target[BLOCK_SIZE * 5 + 17] ^= 0x40;
+
+        byte[] delta = FrameDelta.encode(base, target, BLOCK_SIZE);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        in.skipNBytes(7);
+        assertEquals(1, in.readUnsignedShort());
+        assertEquals(5, in.readUnsignedShort());
+        assertEquals(1, in.readUnsignedShort());
+        assertEquals(9 + 4 + BLOCK_SIZE, delta.length);
+        assertArrayEquals(target, apply(base, delta));
+    }
+
+    @Test
+    void roundTripsAdjacentAndSeparateRuns() {
+        byte[] base = randomFrame(FRAME_LENGTH, 3);
+        byte[] target = base.clone();
+        for (int block : new int[]{0, 1, 2, 10, 30, 31, 119}) {
+            target[block * BLOCK_SIZE + 3] ^= 0x01;
+        }
+        assertArrayEquals(target, apply(base, FrameDelta.encode(base, target, BLOCK_SIZE)));
+    }
+
+    @Test
+    void roundTripsPartialLastBlock() {
+        // 長度不是塊大小的整數倍，最後一塊只有 123 bytes
+        int length = BLOCK_SIZE * 7 + 123;
+        byte[] base = randomFrame(length, 4);
+        byte[] target = base.clone();
+        target[length - 1] ^= (byte) 0x80;
+        target[0] ^= 0x01;
+
+        byte[] delta = FrameDelta.encode(base, target, BLOCK_SIZE);
+
+        assertEquals(9 + (4 + BLOCK_SIZE) + (4 + 123), delta.length);
+        assertArrayEquals(target, apply(base, delta));
+    }
+
+    @Test
+    void roundTripsOddBlockSizesAndRandomEdits() {
+        Random random = new Random(5);
+        for (int blockSize : new int[]{1, 7, 64, 800, 4096}) {
+            for (int round = 0; round < 20; round++) {
+                int length = 1 + random.nextInt(20000);
+                byte[] base = randomFrame(length, random.nextLong());
+                byte[] target = base.clone();
+                int edits = random.nextInt(50);
+                for (int i = 0; i < edits; i++) {
+                    target[random.nextInt(length)] = (byte) random.nextInt(256);
+                }
+                assertArrayEquals(target, apply(base, FrameDelta.encode(base, target, blockSize)),
+                        "blockSize=" + blockSize + ", length=" + length);
+            }
+        }
+    }
+
+    @Test
+    void completelyChangedFrameIsOneRun() {
+        byte[] base = new byte[FRAME_LENGTH];
+        byte[] target = new byte[FRAME_LENGTH];
+        Arrays.fill(target, (byte) 0xFF);
+
+        byte[] delta = FrameDelta.encode(base, target, BLOCK_SIZE);
+
+        assertEquals(9 + 4 + FRAME_LENGTH, delta.length);
+        assertArrayEquals(target, apply(base, delta));
+    }
+
+    @Test
+    void differentLengthsCannotBeDiffed() {
+        assertNull(FrameDelta.encode(new byte[800], new byte[1600], BLOCK_SIZE));
+        assertNull(FrameDelta.encode(null, new byte[800], BLOCK_SIZE));
+    }
+
+    /**
+     * 設備端的解碼方式：複製基準幀，再按區段覆寫
+     */
+    private static byte[] apply(byte[] base, byte[] delta) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+            assertEquals(FrameDelta.FORMAT_VERSION, in.readUnsignedByte());
+            int blockSize = in.readUnsignedShort();
+            int length = in.readInt();
+            assertEquals(base.length, length);
+            byte[] frame = base.clone();
+            int runs = in.readUnsignedShort();
+            for (int i = 0; i < runs; i++) {
+                int from = in.readUnsignedShort() * blockSize;
+                int to = Math.min(from + in.readUnsignedShort() * blockSize, length);
+                in.readFully(frame, from, to - from);
+            }
+            assertEquals(-1, in.read());
+            return frame;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] randomFrame(int length, long seed) {
+        byte[] frame = new byte[length];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+}
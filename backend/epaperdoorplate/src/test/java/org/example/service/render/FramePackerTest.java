@@ -0,0 +1,67 @@
+package org.example.service.render;
+
+import org.example.model.DisplayProfile;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * FramePacker 與 Python 渲染器的逐位元組比對
+ * render/frame-packer-expected.bin 由 render_doorplate_fixed.py 的 canvas_to_bin_bytes 轉換
+ * render/frame-packer-canvas.png 產生；畫布包含灰階漸層（閾值兩側）、紅色判斷邊界附近的顏色、
+ * 抗鋸齒的黑 / 紅文字與圖形、橙色 / 棕色色塊及隨機像素
+ */
+class FramePackerTest {
+
+    @Test
+    void packMatchesPythonCanvasToBinBytes() throws IOException {
+        BufferedImage canvas = readCanvas();
+        assertArrayEquals(readExpected(), FramePacker.pack(canvas));
+    }
+
+    @Test
+    void parallelPackMatchesPythonCanvasToBinBytes() throws IOException {
+        BufferedImage canvas = readCanvas();
+        assertArrayEquals(readExpected(), FramePacker.pack(canvas, true));
+    }
+
+    @Test
+    void intRgbCanvasMatchesPythonCanvasToBinBytes() throws IOException {
+        // Java 渲染器的畫布為 INT_RGB，打包時直接讀取底層陣列
+        BufferedImage source = readCanvas();
+        BufferedImage canvas = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        canvas.getGraphics().drawImage(source, 0, 0, null);
+        assertArrayEquals(readExpected(), FramePacker.pack(canvas));
+    }
+
+    @Test
+    void defaultProfileMatchesPythonCanvasToBinBytes() throws IOException {
+        DisplayProfile profile = DisplayProfile.defaultProfile();
+        FrameBuffer frame = FramePacker.packFrame(readCanvas(), profile, false);
+        assertArrayEquals(readExpected(), frame.toBin(profile));
+    }
+
+    private static BufferedImage readCanvas() throws IOException {
+        try (InputStream in = resource("frame-packer-canvas.png")) {
+            return ImageIO.read(in);
+        }
+    }
+
+    private static byte[] readExpected() throws IOException {
+        try (InputStream in = resource("frame-packer-expected.bin")) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static InputStream resource(String name) {
+        InputStream in = FramePackerTest.class.getResourceAsStream("/render/" + name);
+        assertNotNull(in, "缺少測試資源: " + name);
+        return in;
+    }
+}
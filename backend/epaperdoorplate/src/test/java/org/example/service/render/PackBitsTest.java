@@ -0,0 +1,114 @@
+package org.example.service.render;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PackBits 往返測試：以標準 PackBits 解碼（與設備端相同）還原，結果需與原始數據逐位元組相同
+ */
+class PackBitsTest {
+
+    @Test
+    void emptyAndSingleByte() {
+        assertArrayEquals(new byte[0], PackBits.encode(new byte[0]));
+        assertArrayEquals(new byte[]{0, 42}, PackBits.encode(new byte[]{42}));
+    }
+
+    @Test
+    void repeatRunsAreSplitAt128() {
+        for (int length : new int[]{2, 3, 127, 128, 129, 130, 255, 256, 257}) {
+            byte[] data = new byte[length];
+            Arrays.fill(data, (byte) 0x5A);
+            assertRoundTrip(data);
+        }
+        byte[] run = new byte[128];
+        assertArrayEquals(new byte[]{-127, 0}, PackBits.encode(run));
+    }
+
+    @Test
+    void whiteFrameCompressesToMaximalRuns() {
+        byte[] frame = new byte[96000];
+        byte[] encoded = PackBits.encode(frame);
+        assertEquals(96000 / 128 * 2, encoded.length);
+        assertRoundTrip(frame);
+    }
+
+    @Test
+    void literalRunsAreSplitAt128() {
+        for (int length : new int[]{1, 2, 127, 128, 129, 255, 256, 257, 1000}) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) i;
+            }
+            assertRoundTrip(data);
+        }
+    }
+
+    @Test
+    void mixedRunsAndOddLengths() {
+        byte[] data = {1, 1, 2, 3, 3, 3, 4, 5, 6, 6, 7};
+        assertRoundTrip(data);
+        // 單個位元組夾在重複段之間、結尾是單個位元組
+        assertRoundTrip(new byte[]{0, 0, 0, 9, 0, 0, 0, 8});
+        assertRoundTrip(new byte[]{7, 0, 0});
+    }
+
+    @Test
+    void randomFramesRoundTrip() {
+        Random random = new Random(8);
+        for (int round = 0; round < 200; round++) {
+            int length = random.nextInt(5000) + 1;
+            byte[] data = new byte[length];
+            // 少量取值使重複段與原樣段交替出現
+            int alphabet = 1 + random.nextInt(4);
+            int pos = 0;
+            while (pos < length) {
+                int span = Math.min(length - pos, 1 + random.nextInt(300));
+                byte value = (byte) random.nextInt(alphabet);
+                boolean literal = random.nextBoolean();
+                for (int i = 0; i < span; i++) {
+                    data[pos + i] = literal ? (byte) random.nextInt(256) : value;
+                }
+                pos += span;
+            }
+            assertRoundTrip(data);
+        }
+    }
+
+    private static void assertRoundTrip(byte[] data) {
+        byte[] encoded = PackBits.encode(data);
+        assertArrayEquals(data, decode(encoded), "length=" + data.length);
+    }
+
+    /**
+     * 標準 PackBits 解碼，並檢查編碼不使用 -128、每段不超過 128 bytes
+     */
+    private static byte[] decode(byte[] encoded) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < encoded.length) {
+            int n = encoded[i++];
+            assertNotEquals(-128, n);
+            if (n >= 0) {
+                assertTrue(i + n + 1 <= encoded.length, "原樣段超出數據");
+                out.write(encoded, i, n + 1);
+                i += n + 1;
+            } else {
+                assertTrue(i < encoded.length, "重複段缺少位元組");
+                for (int k = 0; k < 1 - n; k++) {
+                    out.write(encoded[i]);
+                }
+                i++;
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,214 @@
+package org.example.service.render;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenderSchedulerTest {
+
+    private RenderScheduler scheduler;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void runsHigherPriorityFirst() throws Exception {
+        scheduler = new RenderScheduler(1, 10, 30, 30, 30, 30);
+        blockWorker();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> batch = submit(RenderPriority.BATCH, () -> record(order, "batch"));
+        awaitQueued(RenderPriority.BATCH, 1);
+        CompletableFuture<String> preview = submit(RenderPriority.PREVIEW, () -> record(order, "preview"));
+        awaitQueued(RenderPriority.PREVIEW, 1);
+        CompletableFuture<String> activation = submit(RenderPriority.ACTIVATION, () -> record(order, "activation"));
+        awaitQueued(RenderPriority.ACTIVATION, 1);
+        CompletableFuture<String> device = submit(RenderPriority.DEVICE, () -> record(order, "device"));
+        awaitQueued(RenderPriority.DEVICE, 1);
+
+        release.countDown();
+
+        CompletableFuture.allOf(batch, preview, activation, device).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("device", "activation", "preview", "batch"), order);
+    }
+
+    @Test
+    void batchIsEvictedBeforePreview() throws Exception {
+        scheduler = new RenderScheduler(1, 2, 30, 30, 30, 30);
+        blockWorker();
+        CompletableFuture<String> batch = submit(RenderPriority.BATCH, () -> "batch");
+        awaitQueued(RenderPriority.BATCH, 1);
+        CompletableFuture<String> preview = submit(RenderPriority.PREVIEW, () -> "preview");
+        awaitQueued(RenderPriority.PREVIEW, 1);
+
+        CompletableFuture<String> device = submit(RenderPriority.DEVICE, () -> "device");
+
+        ExecutionException evicted = assertThrows(ExecutionException.class, () -> batch.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RenderRejectedException.class, evicted.getCause());
+        release.countDown();
+        assertEquals("device", device.get(5, TimeUnit.SECONDS));
+        assertEquals("preview", preview.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void fullQueueEvictsLowestPriorityForHigherPriority() throws Exception {
+        scheduler = new RenderScheduler(1, 2, 30, 30, 30, 30);
+        blockWorker();
+        CompletableFuture<String> firstPreview = submit(RenderPriority.PREVIEW, () -> "first");
+        awaitQueued(RenderPriority.PREVIEW, 1);
+        CompletableFuture<String> lastPreview = submit(RenderPriority.PREVIEW, () -> "last");
+        awaitQueued(RenderPriority.PREVIEW, 2);
+
+        CompletableFuture<String> device = submit(RenderPriority.DEVICE, () -> "device");
+
+        ExecutionException evicted = assertThrows(ExecutionException.class, () -> lastPreview.get(5, TimeUnit.SECONDS));
+        RenderRejectedException rejection = assertInstanceOf(RenderRejectedException.class, evicted.getCause());
+        assertTrue(rejection.getRetryAfterSeconds() >= 1);
+        release.countDown();
+        assertEquals("device", device.get(5, TimeUnit.SECONDS));
+        assertEquals("first", firstPreview.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void raisedTicketIsReorderedAndGetsTheLongerDeadline() throws Exception {
+        scheduler = new RenderScheduler(1, 10, 30, 30, 1, 30);
+        blockWorker();
+        List<String> order = new CopyOnWriteArrayList<>();
+        RenderScheduler.Ticket ticket = new RenderScheduler.Ticket(RenderPriority.PREVIEW);
+        CompletableFuture<String> raised = submit(ticket, () -> record(order, "raised"));
+        awaitQueued(RenderPriority.PREVIEW, 1);
+        CompletableFuture<String> activation = submit(RenderPriority.ACTIVATION, () -> record(order, "activation"));
+        awaitQueued(RenderPriority.ACTIVATION, 1);
+
+        scheduler.raise(ticket, RenderPriority.DEVICE);
+        scheduler.raise(ticket, RenderPriority.PREVIEW);
+        awaitQueued(RenderPriority.DEVICE, 1);
+        // 超過預覽的截止時間（1 秒）後仍在等待
+        Thread.sleep(1200);
+        release.countDown();
+
+        CompletableFuture.allOf(raised, activation).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("raised", "activation"), order);
+        assertEquals(0L, scheduler.getStats().get("expired"));
+    }
+
+    @Test
+    void fullQueueRejectsSameOrLowerPriorityWithRetryAfter() throws Exception {
+        scheduler = new RenderScheduler(1, 1, 30, 30, 30, 30);
+        blockWorker();
+        submit(RenderPriority.DEVICE, () -> "queued");
+        awaitQueued(RenderPriority.DEVICE, 1);
+
+        RenderRejectedException same = assertThrows(RenderRejectedException.class,
+                () -> scheduler.execute(RenderPriority.DEVICE, () -> "same"));
+        RenderRejectedException lower = assertThrows(RenderRejectedException.class,
+                () -> scheduler.execute(RenderPriority.PREVIEW, () -> "lower"));
+
+        assertTrue(same.getRetryAfterSeconds() >= 1);
+        assertTrue(lower.getRetryAfterSeconds() >= 1);
+        assertEquals(2L, scheduler.getStats().get("rejected"));
+    }
+
+    @Test
+    void expiredTaskIsRejectedAndNeverRuns() throws Exception {
+        scheduler = new RenderScheduler(1, 10, 30, 30, 1, 30);
+        blockWorker();
+        AtomicBoolean ran = new AtomicBoolean();
+
+        RenderRejectedException expired = assertThrows(RenderRejectedException.class,
+                () -> scheduler.execute(RenderPriority.PREVIEW, () -> {
+                    ran.set(true);
+                    return "late";
+                }));
+        release.countDown();
+        // 等待 worker 處理完阻塞任務後的隊列
+        assertEquals("after", scheduler.execute(RenderPriority.PREVIEW, () -> "after"));
+
+        assertTrue(expired.getRetryAfterSeconds() >= 1);
+        assertFalse(ran.get());
+        assertEquals(1L, scheduler.getStats().get("expired"));
+    }
+
+    @Test
+    void jobExceptionPropagatesToCaller() {
+        scheduler = new RenderScheduler(1, 10, 30, 30, 30, 30);
+        IllegalArgumentException failure = new IllegalArgumentException("bad layout");
+
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                () -> scheduler.execute(RenderPriority.DEVICE, () -> {
+                    throw failure;
+                }));
+
+        assertSame(failure, thrown);
+    }
+
+    /**
+     * 佔住唯一的 worker，直到 release 被釋放
+     */
+    private void blockWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        submit(RenderPriority.DEVICE, () -> {
+            started.countDown();
+            release.await();
+            return "blocker";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private <T> CompletableFuture<T> submit(RenderPriority priority, Callable<T> job) {
+        return submit(new RenderScheduler.Ticket(priority), job);
+    }
+
+    private <T> CompletableFuture<T> submit(RenderScheduler.Ticket ticket, Callable<T> job) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Thread caller = new Thread(() -> {
+            try {
+                result.complete(scheduler.execute(ticket, job));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        caller.setDaemon(true);
+        caller.start();
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void awaitQueued(RenderPriority priority, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            Map<String, Integer> queued = (Map<String, Integer>) scheduler.getStats().get("queued");
+            if (queued.get(priority.name()) >= count) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("任務未進入隊列: " + priority);
+    }
+
+    private static String record(List<String> order, String name) {
+        order.add(name);
+        return name;
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.service.render;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+
+    @Test
+    void concurrentCallsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<String>> results = startCallers("layout", () -> {
+            executions.incrementAndGet();
+            await(release);
+            return "frame";
+        });
+        awaitCoalesced(CALLERS - 1);
+
+        release.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals("frame", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, flights.getInFlightCount());
+    }
+
+    @Test
+    void failurePropagatesToEveryWaiter() throws Exception {
+        IllegalStateException failure = new IllegalStateException("render failed");
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<String>> results = startCallers("layout", () -> {
+            await(release);
+            throw failure;
+        });
+        awaitCoalesced(CALLERS - 1);
+
+        release.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(failure, thrown.getCause());
+        }
+        assertEquals(0, flights.getInFlightCount());
+    }
+
+    @Test
+    void failedFlightIsNotReused() {
+        assertThrows(IllegalStateException.class, () -> flights.execute("layout", () -> {
+            throw new IllegalStateException("first attempt");
+        }));
+
+        assertEquals("retried", flights.execute("layout", () -> "retried"));
+    }
+
+    @Test
+    void errorsPropagateUnwrapped() throws Exception {
+        AssertionError error = new AssertionError("out of memory");
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<String>> results = startCallers("layout", () -> {
+            await(release);
+            throw error;
+        });
+        awaitCoalesced(CALLERS - 1);
+
+        release.countDown();
+
+        for (CompletableFuture<String> result : results) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(error, thrown.getCause());
+        }
+    }
+
+    @Test
+    void differentKeysRunIndependently() {
+        AtomicInteger executions = new AtomicInteger();
+        String outer = flights.execute("a", () -> {
+            executions.incrementAndGet();
+            return flights.execute("b", () -> {
+                executions.incrementAndGet();
+                return "b";
+            }) + "a";
+        });
+
+        assertEquals("ba", outer);
+        assertEquals(2, executions.get());
+        assertEquals(0L, flights.getCoalescedCount());
+    }
+
+    @Test
+    void joinersReceiveTheLeadersContext() throws Exception {
+        List<String> joined = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flights.execute("layout",
+                () -> "leader-context",
+                context -> {
+                    started.countDown();
+                    await(release);
+                    return "frame from " + context;
+                },
+                joined::add));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> flights.execute("layout",
+                () -> "unused-context",
+                context -> "not executed",
+                joined::add));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertEquals("frame from leader-context", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("frame from leader-context", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("leader-context"), joined);
+    }
+
+    private List<CompletableFuture<String>> startCallers(String key, Supplier<String> work) {
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            Thread caller = new Thread(() -> {
+                try {
+                    result.complete(flights.execute(key, work));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            caller.setDaemon(true);
+            caller.start();
+            results.add(result);
+        }
+        return results;
+    }
+
+    private void awaitCoalesced(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flights.getCoalescedCount() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "呼叫未被合併");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.example.service.transfer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferStateTrackerTest {
+
+    private TransferStateTracker tracker;
+
+    @AfterEach
+    void shutdown() {
+        if (tracker != null) {
+            tracker.shutdown();
+        }
+    }
+
+    @Test
+    void evictsOldestFinishedStateAtCapacity() throws InterruptedException {
+        tracker = tracker(new InMemoryTransferStateStore(), 10);
+        tracker.markInProgress("finished-old");
+        tracker.complete("finished-old", true, null);
+        Thread.sleep(5);
+        for (int i = 0; i < 4; i++) {
+            tracker.markInProgress("finished-" + i);
+            tracker.complete("finished-" + i, false, "error");
+        }
+        for (int i = 0; i < 5; i++) {
+            tracker.markInProgress("active-" + i);
+        }
+
+        tracker.markInProgress("new-device");
+
+        assertTrue(tracker.isTransferring("new-device"));
+        assertTrue(tracker.get("finished-old").isEmpty());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(tracker.isTransferring("active-" + i));
+        }
+        Map<String, Object> stats = tracker.getStats();
+        assertEquals(0L, stats.get("dropped"));
+        assertTrue((Long) stats.get("evictions") >= 1);
+        assertEquals(6, stats.get("inProgress"));
+        assertEquals(stats.get("entries"),
+                (Integer) stats.get("inProgress") + (Integer) stats.get("success") + (Integer) stats.get("failed"));
+    }
+
+    @Test
+    void dropsNewDeviceOnlyWhenAllStatesAreInProgress() {
+        tracker = tracker(new InMemoryTransferStateStore(), 3);
+        for (int i = 0; i < 3; i++) {
+            tracker.markInProgress("active-" + i);
+        }
+
+        tracker.markInProgress("new-device");
+
+        assertFalse(tracker.isTransferring("new-device"));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(tracker.isTransferring("active-" + i));
+        }
+        assertEquals(1L, tracker.getStats().get("dropped"));
+    }
+
+    @Test
+    void retriesRemovalAfterStoreFailure() throws InterruptedException {
+        FailingRemovalStore store = new FailingRemovalStore();
+        tracker = tracker(store, 100);
+        tracker.markInProgress("device-1");
+        tracker.clear("device-1");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.removed.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(store.removeAttempts.get() >= 2);
+        assertEquals(List.of("device-1"), store.removed);
+    }
+
+    private static TransferStateTracker tracker(TransferStateStore store, int maxEntries) {
+        return new TransferStateTracker(store, 300, 600, 3600, maxEntries, 10, 16);
+    }
+
+    /**
+     * 共用存儲：第一次刪除失敗，之後成功
+     */
+    private static class FailingRemovalStore implements TransferStateStore {
+
+        final AtomicInteger removeAttempts = new AtomicInteger();
+        final List<String> removed = new CopyOnWriteArrayList<>();
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
+        @Override
+        public void saveAll(Map<String, TransferState> states) {
+        }
+
+        @Override
+        public void removeAll(Collection<String> deviceIds) {
+            if (removeAttempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("store unavailable");
+            }
+            removed.addAll(deviceIds);
+        }
+
+        @Override
+        public Map<String, TransferState> loadAll(long now) {
+            return Map.of();
+        }
+
+        @Override
+        public Map<String, TransferState> load(Collection<String> deviceIds, long now) {
+            return Map.of();
+        }
+    }
+}